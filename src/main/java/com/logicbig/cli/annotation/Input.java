@@ -0,0 +1,35 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Method parameter annotated with Input receives the output lines of the previous command in a pipeline e.g.
+ * <code>cmdA | cmdB</code>. The parameter type must be either <code>Stream&lt;String&gt;</code> or
+ * <code>Iterable&lt;String&gt;</code>, the lines are produced lazily while the previous command is still running.
+ * If the command is not the target of a pipe, the input is empty. A method can have only one such parameter.
+ *
+ * @author Joe Khan.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Input {
+}
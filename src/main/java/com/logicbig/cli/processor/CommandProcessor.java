@@ -0,0 +1,395 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.processor;
+
+import com.logicbig.cli.annotation.Argument;
+import com.logicbig.cli.annotation.Command;
+import com.logicbig.cli.annotation.Input;
+import com.logicbig.cli.annotation.Option;
+import com.logicbig.cli.annotation.OptionFlag;
+import com.logicbig.cli.shell.GeneratedCommands;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor which generates a {@link GeneratedCommands} implementation for each class declaring
+ * methods annotated with @Command. The generated code defines the commands and calls the command methods directly,
+ * so {@link com.logicbig.cli.shell.QuickCLIShell#scanCommands(Class[])} doesn't need any reflection for those
+ * classes.
+ * <p>
+ * The same rules as of the runtime scanning are checked at compile time and reported as compilation errors.
+ * Classes which cannot be accessed from generated code in the same package (e.g. private classes, classes without
+ * a non private no-arg constructor or private command methods) are skipped and are scanned at runtime as before.
+ *
+ * @author Joe Khan.
+ */
+@SupportedAnnotationTypes("com.logicbig.cli.annotation.Command")
+public class CommandProcessor extends AbstractProcessor {
+
+    private static final Set<String> SUPPORTED_TYPES = new LinkedHashSet<>(Arrays.asList(
+            "java.lang.String", "java.lang.Float", "java.math.BigDecimal", "java.lang.Long", "java.lang.Double",
+            "java.lang.Short", "java.math.BigInteger", "java.lang.Byte", "java.lang.Integer",
+            "float", "long", "double", "short", "byte", "int"));
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> handlerTypes = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(Command.class)) {
+            if (element.getKind() == ElementKind.METHOD &&
+                    element.getEnclosingElement() instanceof TypeElement) {
+                handlerTypes.add((TypeElement) element.getEnclosingElement());
+            }
+        }
+
+        for (TypeElement handlerType : handlerTypes) {
+            // using the declaration order of the methods
+            List<ExecutableElement> methods = new ArrayList<>();
+            for (ExecutableElement method : ElementFilter.methodsIn(handlerType.getEnclosedElements())) {
+                if (method.getAnnotation(Command.class) != null) {
+                    methods.add(method);
+                }
+            }
+            if (validate(methods) && isAccessible(handlerType, methods)) {
+                try {
+                    generate(handlerType, methods);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Could not generate commands: " + e, handlerType);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean validate(List<ExecutableElement> methods) {
+        boolean valid = true;
+        for (ExecutableElement method : methods) {
+            TypeMirror returnType = method.getReturnType();
+            if (returnType.getKind() != TypeKind.VOID && !isType(returnType, "java.lang.String") &&
+                    !isOfString(returnType, "java.util.concurrent.CompletableFuture") &&
+                    !isOfString(returnType, "java.util.stream.Stream") &&
+                    !isOfString(returnType, "java.util.Iterator") && !isIterable(returnType)) {
+                error(method, "The command method return type should be either String, CompletableFuture<String>, " +
+                        "Stream<String>, Iterator<String>, Iterable or void");
+                valid = false;
+            }
+            Set<String> names = new HashSet<>();
+            boolean input = false;
+            for (VariableElement parameter : method.getParameters()) {
+                Option option = parameter.getAnnotation(Option.class);
+                OptionFlag optionFlag = parameter.getAnnotation(OptionFlag.class);
+                Argument argument = parameter.getAnnotation(Argument.class);
+                String typeName = erasure(parameter.asType());
+                if (option != null) {
+                    valid &= checkParameterType(parameter, typeName);
+                    if (!names.add(option.name())) {
+                        error(parameter, "Option defined more than once :" + option.name());
+                        valid = false;
+                    }
+                }
+                if (optionFlag != null) {
+                    if (!typeName.equals("boolean") && !typeName.equals("java.lang.Boolean")) {
+                        error(parameter, "Parameter annotated with OptionFlag must be of boolean type : " +
+                                optionFlag.name() + ", type found : " + typeName);
+                        valid = false;
+                    }
+                    if (!names.add(Character.toString(optionFlag.name()))) {
+                        error(parameter, "Option flag defined more than once :" + optionFlag.name());
+                        valid = false;
+                    }
+                }
+                if (argument != null) {
+                    valid &= checkParameterType(parameter, typeName);
+                }
+                if (parameter.getAnnotation(Input.class) != null) {
+                    if (!isStringSequence(parameter.asType())) {
+                        error(parameter, "Parameter annotated with Input must be of type Stream<String> or " +
+                                "Iterable<String>, type found : " + parameter.asType());
+                        valid = false;
+                    }
+                    if (input) {
+                        error(parameter, "Input defined more than once");
+                        valid = false;
+                    }
+                    input = true;
+                }
+            }
+        }
+        return valid;
+    }
+
+    private boolean isStringSequence(TypeMirror type) {
+        return isOfString(type, "java.util.stream.Stream") || isOfString(type, "java.lang.Iterable");
+    }
+
+    /**
+     * @return true if the type is the provided generic type with String as type argument e.g. Stream&lt;String&gt;
+     */
+    private boolean isOfString(TypeMirror type, String rawType) {
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+        return types.isSameType(type, types.getDeclaredType(elements.getTypeElement(rawType),
+                elements.getTypeElement("java.lang.String").asType()));
+    }
+
+    private boolean isIterable(TypeMirror type) {
+        Types types = processingEnv.getTypeUtils();
+        return types.isAssignable(types.erasure(type),
+                types.erasure(processingEnv.getElementUtils().getTypeElement("java.lang.Iterable").asType()));
+    }
+
+    private boolean checkParameterType(VariableElement parameter, String typeName) {
+        if (!SUPPORTED_TYPES.contains(typeName)) {
+            error(parameter, "Option/Argument type must be either String or any sub type of following Number " +
+                    "type: " + SUPPORTED_TYPES + ", Found: " + typeName);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeElement handlerType, List<ExecutableElement> methods) {
+        if (handlerType.getKind() != ElementKind.CLASS ||
+                handlerType.getModifiers().contains(Modifier.ABSTRACT) ||
+                !handlerType.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        for (Element e = handlerType; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement type = (TypeElement) e;
+            if (type.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (type.getNestingKind() == NestingKind.MEMBER) {
+                if (!type.getModifiers().contains(Modifier.STATIC)) {
+                    return false;
+                }
+            } else if (type.getNestingKind() != NestingKind.TOP_LEVEL) {
+                return false;
+            }
+        }
+
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(handlerType.getEnclosedElements());
+        boolean noArgConstructor = false;
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                noArgConstructor = true;
+            }
+        }
+        if (!noArgConstructor) {
+            return false;
+        }
+
+        for (ExecutableElement method : methods) {
+            if (method.getModifiers().contains(Modifier.PRIVATE) || !method.getTypeParameters().isEmpty()) {
+                return false;
+            }
+            for (VariableElement parameter : method.getParameters()) {
+                int annotations = (parameter.getAnnotation(Option.class) != null ? 1 : 0) +
+                        (parameter.getAnnotation(OptionFlag.class) != null ? 1 : 0) +
+                        (parameter.getAnnotation(Argument.class) != null ? 1 : 0) +
+                        (parameter.getAnnotation(Input.class) != null ? 1 : 0);
+                // such parameters are left to the runtime scanning
+                if (annotations != 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement handlerType, List<ExecutableElement> methods) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(handlerType).getQualifiedName().toString();
+        String simpleName = getFlatName(handlerType) + GeneratedCommands.CLASS_NAME_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        String handler = handlerType.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(handlerType).toString();
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("/**\n * Generated by ").append(CommandProcessor.class.getName())
+                .append(" from ").append(handler).append(". Do not edit.\n */\n");
+        sb.append("public final class ").append(simpleName)
+                .append(" implements ").append(GeneratedCommands.class.getCanonicalName()).append(" {\n\n");
+
+        sb.append("    @Override\n    public Class<?> getHandlerClass() {\n        return ")
+                .append(handler).append(".class;\n    }\n\n");
+        sb.append("    @Override\n    public Object newHandler() {\n        return new ")
+                .append(handler).append("();\n    }\n\n");
+        if (methods.stream().flatMap(m -> m.getParameters().stream())
+                .anyMatch(p -> p.getAnnotation(Input.class) != null)) {
+            //the piped input is passed as Object
+            sb.append("    @SuppressWarnings(\"unchecked\")\n");
+        }
+        sb.append("    @Override\n    public void registerCommands(")
+                .append(GeneratedCommands.Registrar.class.getCanonicalName()).append(" registrar) {\n");
+
+        for (ExecutableElement method : methods) {
+            Command command = method.getAnnotation(Command.class);
+            sb.append("        registrar.command(").append(literal(command.name())).append(", ")
+                    .append(literal(command.desc())).append(", ")
+                    .append(literal(binaryName + "#" + method.getSimpleName())).append(",\n");
+            appendDispatcher(sb, handler, method);
+
+            for (VariableElement parameter : method.getParameters()) {
+                String type = erasure(parameter.asType()) + ".class";
+                Option option = parameter.getAnnotation(Option.class);
+                if (option != null) {
+                    sb.append("                .option(").append(literal(option.name())).append(", ")
+                            .append(literal(option.desc())).append(", ").append(option.mandatory()).append(", ")
+                            .append(type);
+                    for (String value : option.valuesAllowed()) {
+                        sb.append(", ").append(literal(value));
+                    }
+                    sb.append(")\n");
+                }
+                OptionFlag optionFlag = parameter.getAnnotation(OptionFlag.class);
+                if (optionFlag != null) {
+                    sb.append("                .optionFlag(").append(literal(optionFlag.name())).append(", ")
+                            .append(literal(optionFlag.desc())).append(", ").append(type).append(")\n");
+                }
+                Argument argument = parameter.getAnnotation(Argument.class);
+                if (argument != null) {
+                    sb.append("                .argument(").append(literal(argument.name())).append(", ")
+                            .append(literal(argument.desc())).append(", ").append(argument.mandatory())
+                            .append(", ").append(type).append(")\n");
+                }
+                if (parameter.getAnnotation(Input.class) != null) {
+                    sb.append("                .input(").append(type).append(")\n");
+                }
+            }
+            sb.append("                .register();\n");
+        }
+        sb.append("    }\n}\n");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, handlerType);
+        try (Writer writer = file.openWriter()) {
+            writer.write(sb.toString());
+        }
+    }
+
+    private void appendDispatcher(StringBuilder sb, String handler, ExecutableElement method) {
+        StringBuilder call = new StringBuilder();
+        if (method.getModifiers().contains(Modifier.STATIC)) {
+            call.append(handler);
+        } else {
+            call.append("((").append(handler).append(") handler)");
+        }
+        call.append('.').append(method.getSimpleName()).append('(');
+        List<? extends VariableElement> parameters = method.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                call.append(", ");
+            }
+            call.append('(').append(boxedName(parameters.get(i).asType())).append(") args[").append(i).append(']');
+        }
+        call.append(')');
+
+        sb.append("                (handler, args) -> ");
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            sb.append("{\n                    ").append(call).append(";\n                    return null;\n")
+                    .append("                })\n");
+        } else {
+            sb.append(call).append(")\n");
+        }
+    }
+
+    private String getFlatName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        return enclosing instanceof TypeElement ? getFlatName((TypeElement) enclosing) + "_" + name : name;
+    }
+
+    private String boxedName(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return erasure(type);
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private boolean isType(TypeMirror type, String name) {
+        return erasure(type).equals(name);
+    }
+
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static String literal(char c) {
+        return "'" + (c == '\'' ? "\\'" : escape(Character.toString(c))) + "'";
+    }
+
+    private static String literal(String s) {
+        return "\"" + escape(s) + "\"";
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c > '~') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Hands the flushed shell output over to a writer thread, so a slow terminal doesn't stall the commands. The
+ * output chunks are queued in a bounded ring buffer without locking. There's a single producer, the shell output
+ * flushes under its flush lock, and a single consumer, the writer thread.
+ *
+ * @author Joe Khan.
+ */
+final class AsyncOutput {
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final AtomicReferenceArray<String> slots;
+    private final int mask;
+    //the next slot to read, advanced once the chunk has been written
+    private final AtomicLong head = new AtomicLong();
+    //the next slot to fill
+    private final AtomicLong tail = new AtomicLong();
+    //the chunks which didn't fit in the ring buffer, written as a single chunk once the ring buffer is drained
+    private final Queue<String> coalesced = new ConcurrentLinkedQueue<>();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final OutputOverflowPolicy policy;
+    private final Consumer<String> target;
+    private final Thread thread;
+    private volatile boolean waiting;
+    private volatile boolean writingCoalesced;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+
+    /**
+     * @param capacity the number of chunks which can be queued, rounded up to a power of two
+     * @param policy   what to do if the queue is full
+     * @param target   writes a chunk to the terminal
+     */
+    AsyncOutput(int capacity, OutputOverflowPolicy policy, Consumer<String> target) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid output queue capacity: " + capacity);
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Output overflow policy cannot be null");
+        }
+        int size = Integer.highestOneBit(capacity);
+        size = size < capacity ? size << 1 : size;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        this.policy = policy;
+        this.target = target;
+        thread = new Thread(this::drain, "quickcli-output");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a chunk of output, must not be called concurrently. A failure of the writer thread is thrown by the
+     * next call.
+     */
+    void write(String chunk) {
+        RuntimeException error = failure;
+        if (error != null) {
+            failure = null;
+            throw error;
+        }
+        //nothing may overtake the coalesced output
+        if (!coalesced.isEmpty()) {
+            coalesce(chunk);
+            return;
+        }
+        long t = tail.get();
+        while (t - head.get() == slots.length()) {
+            if (policy == OutputOverflowPolicy.DROP) {
+                droppedLines.addAndGet(countLines(chunk));
+                return;
+            } else if (policy == OutputOverflowPolicy.COALESCE) {
+                coalesce(chunk);
+                return;
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        slots.lazySet((int) t & mask, chunk);
+        tail.set(t + 1);
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void coalesce(String chunk) {
+        coalesced.add(chunk);
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static int countLines(String chunk) {
+        int lines = 0;
+        for (int i = chunk.indexOf('\n'); i != -1; i = chunk.indexOf('\n', i + 1)) {
+            lines++;
+        }
+        return lines;
+    }
+
+    private void drain() {
+        while (true) {
+            //no chunk is queued while there's coalesced output, so the queue has to be drained first
+            boolean coalescedPending = !coalesced.isEmpty();
+            long h = head.get();
+            if (h != tail.get()) {
+                int slot = (int) h & mask;
+                String chunk = slots.get(slot);
+                slots.lazySet(slot, null);
+                writeChunk(chunk);
+                head.set(h + 1);
+                continue;
+            }
+            if (coalescedPending) {
+                writingCoalesced = true;
+                writeChunk(takeCoalesced());
+                writingCoalesced = false;
+                continue;
+            }
+            if (closed) {
+                return;
+            }
+            waiting = true;
+            if (head.get() == tail.get() && coalesced.isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            waiting = false;
+        }
+    }
+
+    private String takeCoalesced() {
+        StringBuilder sb = new StringBuilder();
+        for (String chunk; (chunk = coalesced.poll()) != null; ) {
+            sb.append(chunk);
+        }
+        return sb.toString();
+    }
+
+    private void writeChunk(String chunk) {
+        try {
+            target.accept(chunk);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Waits until all queued output has been written.
+     */
+    void awaitWritten() {
+        while (head.get() != tail.get() || !coalesced.isEmpty() || writingCoalesced) {
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        RuntimeException error = failure;
+        if (error != null) {
+            failure = null;
+            throw error;
+        }
+    }
+
+    /**
+     * Writes the queued output and stops the writer thread.
+     */
+    void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        awaitWritten();
+    }
+
+    /**
+     * @return the number of chunks waiting to be written
+     */
+    int getQueueDepth() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return the number of lines dropped because the queue was full
+     */
+    long getDroppedLines() {
+        return droppedLines.get();
+    }
+}
@@ -26,20 +26,30 @@ import java.util.*;
 class CmdLineParser {
 
     private final String line;
-    private String remainingLine;
-    private final List<CommandObject> commandObjects;
+    private final CommandRegistry commandRegistry;
     private final List<String> errors = new ArrayList<>();
+    private final CmdLineTokenizer tokenizer = new CmdLineTokenizer();
+    private int argumentsOffset;
     private CommandObject parsedCommandObject;
-    private List<Character> optionFlagValues;
-    private LinkedList<String> argumentValues;
-    private LinkedHashMap<String, String> optionsMap;
-
-    public CmdLineParser(String line, List<CommandObject> commandObjects) {
-        this.commandObjects = commandObjects;
+    private CommandPlan plan;
+    private String[] values;
+    private long[] optionMask;
+    private int argumentCount;
+    private List<String> undefinedOptions;
+    private long flagsLow;
+    private long flagsHigh;
+    private boolean nonAsciiFlags;
+
+    public CmdLineParser(String line, CommandRegistry commandRegistry) {
+        this.commandRegistry = commandRegistry;
         this.line = line != null ? line.trim() : line;
-        remainingLine = line;
     }
 
+    /**
+     * Parses the line and binds the entered values to the slots of the command {@link CommandPlan}. Syntax errors
+     * are collected in {@link #getErrors()}, the values are validated against the command definition by
+     * {@link #validate()}.
+     */
     public void parse() {
         if (line == null || line.length() == 0) {
             return;
@@ -50,47 +60,188 @@ class CmdLineParser {
             return;
         }
 
-        optionsMap = new LinkedHashMap<>();
-        argumentValues = new LinkedList<>();
-        optionFlagValues = new LinkedList<>();
-
-        for (String s : new LineParser(remainingLine).getTokens()) {
-            if (s == null || s.length() == 0) {
-                continue;
+        plan = parsedCommandObject.getPlan();
+        values = new String[plan.getSlotCount()];
+        optionMask = new long[plan.getOptionMaskLength()];
+
+        int tokenCount = tokenizer.tokenize(line, argumentsOffset, line.length());
+        for (int t = 0; t < tokenCount; t++) {
+            CharSequence s = line;
+            int start = tokenizer.getStart(t);
+            int end = tokenizer.getEnd(t);
+            if (tokenizer.hasEscapedQuote(t)) {
+                s = tokenizer.getToken(t);
+                start = 0;
+                end = s.length();
             }
-            if (s.startsWith("--")) {
-                int i = s.indexOf("=");
+
+            if (startsWith(s, start, end, "--")) {
+                int i = indexOf(s, start, end, '=');
                 if (i == -1) {
-                    errors.add("Error: Option must contained a value followed by =, value entered: " + s);
+                    errors.add("Error: Option must contained a value followed by =, value entered: " +
+                            s.subSequence(start, end));
+                    continue;
+                }
+                String value = validateAndCleanArgValue(s, i + 1, end);
+                int slot = plan.getOptionSlot(s, start + 2, i);
+                if (slot != -1) {
+                    values[slot] = value;
+                    CommandPlan.setOptionBit(optionMask, slot);
+                } else {
+                    addUndefinedOption(s.subSequence(start + 2, i).toString());
                 }
-                optionsMap.put(s.substring(2, i), validateAndCleanArgValue(s.substring(i + 1)));
 
-            } else if (s.startsWith("-")) {
-                if (s.length() == 1) {
-                    errors.add("Error: Invalid token " + s);
+            } else if (s.charAt(start) == '-') {
+                if (end - start == 1) {
+                    errors.add("Error: Invalid token " + s.subSequence(start, end));
                 }
-                char[] chars = s.toCharArray();
-                for (int i = 1; i < s.length(); i++) {
-                    optionFlagValues.add(chars[i]);
+                for (int i = start + 1; i < end; i++) {
+                    char flag = s.charAt(i);
+                    if (flag < 128) {
+                        flagsLow |= CommandPlan.lowBit(flag);
+                        flagsHigh |= CommandPlan.highBit(flag);
+                    } else {
+                        nonAsciiFlags = true;
+                    }
                 }
             } else {
-                argumentValues.add(validateAndCleanArgValue(s));
+                String value = validateAndCleanArgValue(s, start, end);
+                if (argumentCount < plan.getArgumentCount()) {
+                    values[plan.getArgumentsOffset() + argumentCount] = value;
+                }
+                argumentCount++;
+            }
+        }
+    }
 
+    private void addUndefinedOption(String name) {
+        if (undefinedOptions == null) {
+            undefinedOptions = new ArrayList<>();
+        }
+        if (!undefinedOptions.contains(name)) {
+            undefinedOptions.add(name);
+        }
+    }
+
+    /**
+     * Validates the parsed values against the command definition and applies the option default values.
+     * Should only be called if parsing found no errors.
+     *
+     * @return the validation error or null if the values are valid
+     */
+    public String validate() {
+        if (argumentCount < plan.getMandatoryArgumentCount()) {
+            return plan.getMandatoryArgumentsMessage();
+        }
+
+        if (!plan.hasMandatoryOptions(optionMask)) {
+            return plan.getMandatoryOptionsMessage();
+        }
+
+        if (undefinedOptions != null) {
+            return "Error: Options not recognized : " + undefinedOptions;
+        }
+
+        for (int slot = 0; slot < plan.getOptionCount(); slot++) {
+            String value = values[slot];
+            if (value == null) {
+                values[slot] = plan.getDefaultValue(slot);
+            } else if (!plan.isAllowedValue(slot, value)) {
+                return plan.getAllowedValuesMessage(slot) + value;
             }
         }
+
+        if (nonAsciiFlags || (flagsLow & ~plan.getFlagMaskLow()) != 0 || (flagsHigh & ~plan.getFlagMaskHigh()) != 0) {
+            return "Error: Option Flags not recognized: " + collectUndefinedFlags();
+        }
+
+        if (argumentCount > plan.getArgumentCount()) {
+            return "Error: Extra arguments entered. Found : " + argumentCount + ", Expecting : " +
+                    plan.getArgumentCount();
+        }
+        return null;
+    }
+
+    // only used for the error message, re-walks the tokens to list the flags in the entered order
+    private List<Character> collectUndefinedFlags() {
+        List<Character> undefinedFlags = new ArrayList<>();
+        for (int t = 0; t < tokenizer.getTokenCount(); t++) {
+            String s = tokenizer.getToken(t);
+            if (s.startsWith("-") && !s.startsWith("--")) {
+                for (int i = 1; i < s.length(); i++) {
+                    if (!plan.isFlagDeclared(s.charAt(i))) {
+                        undefinedFlags.add(s.charAt(i));
+                    }
+                }
+            }
+        }
+        return undefinedFlags;
+    }
+
+    /**
+     * @return true if the option flag was entered
+     */
+    public boolean isFlagSet(char flag) {
+        return CommandPlan.isFlagSet(flagsLow, flagsHigh, flag);
+    }
+
+    /**
+     * Creates the name to value map of all entered options, arguments and option flags.
+     */
+    public Map<String, String> createInputMap() {
+        Map<String, String> inputMap = new HashMap<>();
+        for (int i = 0; i < plan.getArgumentCount(); i++) {
+            putIfNotNull(inputMap, plan.getArgumentName(i), values[plan.getArgumentsOffset() + i]);
+        }
+        for (int slot = 0; slot < plan.getOptionCount(); slot++) {
+            putIfNotNull(inputMap, plan.getOptionName(slot), values[slot]);
+        }
+        for (int i = 0; i < plan.getFlagCount(); i++) {
+            if (isFlagSet(plan.getFlagName(i))) {
+                inputMap.put(Character.toString(plan.getFlagName(i)), "true");
+            }
+        }
+        return inputMap;
     }
 
-    private String validateAndCleanArgValue(String s) {
-        if (s.startsWith("\"")) {
-            if (s.endsWith("\\\"")) {
-                errors.add("Error: Argument values should not end with escaped quote: " + s);
-            } else if (!s.endsWith("\"")) {
-                errors.add("Error: Argument values should end with double quote: " + s);
+    private static void putIfNotNull(Map<String, String> map, String key, String value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    private String validateAndCleanArgValue(CharSequence s, int start, int end) {
+        if (end - start >= 2 && s.charAt(start) == '"') {
+            if (s.charAt(end - 1) == '"' && s.charAt(end - 2) == '\\') {
+                errors.add("Error: Argument values should not end with escaped quote: " + s.subSequence(start, end));
+            } else if (s.charAt(end - 1) != '"') {
+                errors.add("Error: Argument values should end with double quote: " + s.subSequence(start, end));
             } else {
-                return s.substring(1, s.length() - 1);
+                return s.subSequence(start + 1, end - 1).toString();
+            }
+        }
+        return s.subSequence(start, end).toString();
+    }
+
+    private static boolean startsWith(CharSequence s, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence s, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
             }
         }
-        return s;
+        return -1;
     }
 
 
@@ -102,28 +253,29 @@ class CmdLineParser {
         return parsedCommandObject;
     }
 
-    public List<Character> getOptionFlagValues() {
-        return optionFlagValues;
-    }
-
-    public List<String> getArgumentValues() {
-        return argumentValues;
+    public CommandPlan getPlan() {
+        return plan;
     }
 
-    public Map<String, String> getOptionsMap() {
-        return optionsMap;
+    /**
+     * @return the parsed values indexed by {@link CommandPlan} slots, null for the values not entered
+     */
+    public String[] getValues() {
+        return values;
     }
 
     private CommandObject parseCommand() {
-        String cmd = null;
-        int i = line.indexOf(" ");
+        String cmd;
+        int i = line.indexOf(' ');
         if (i != -1) {
             cmd = line.substring(0, i);
-            remainingLine = line.substring(i + 1).trim();
-
+            argumentsOffset = i + 1;
+            while (argumentsOffset < line.length() && line.charAt(argumentsOffset) <= ' ') {
+                argumentsOffset++;
+            }
         } else {
-            cmd = line.trim();
-            remainingLine = "";
+            cmd = line;
+            argumentsOffset = line.length();
         }
 
         return findCommandByName(cmd);
@@ -131,102 +283,12 @@ class CmdLineParser {
 
 
     private CommandObject findCommandByName(String cmd) {
-        Optional<CommandObject> found = commandObjects.stream().filter(command -> command.getName().
-                equalsIgnoreCase(cmd)).findFirst();
-        if (found.isPresent()) {
-            return found.get();
+        CommandObject found = commandRegistry.find(cmd);
+        if (found != null) {
+            return found;
         }
 
         errors.add("Error: No command found : " + cmd);
         return null;
     }
-
-
-    public static void main(String[] args) throws Exception {
-        String line = "\\\"333 \\\"444-666\" -x=9 -s=true";
-
-        System.out.println(new LineParser(line).getTokens());
-
-    }
-
-
-    private static class LineParser {
-        private String cmdString;
-
-        public LineParser(String cmdString) {
-            this.cmdString = cmdString;
-        }
-
-        public List<String> getTokens() {
-            ArrayList<String> finalTokens = new ArrayList<String>();
-            ArrayList<StringBuffer> tokens = new ArrayList<StringBuffer>();
-            char inArray[] = this.cmdString.toCharArray();
-            StringBuffer token = new StringBuffer();
-            int valid = checkIfTheStringIsValid(inArray);
-            if (valid == -1) {
-                for (int i = 0; i <= inArray.length; i++) {
-
-                    if (i != inArray.length) {
-                        if ((inArray[i] != ' ') && (inArray[i] != '"')) {
-                            token.append(inArray[i]);
-                        }
-
-                        if ((inArray[i] == '"') && (i == 0 || inArray[i - 1] != '\\')) {
-                            token.append(inArray[i]);
-                            i = i + 1;
-                            while (checkIfLastQuote(inArray, i)) {
-                                token.append(inArray[i]);
-                                i++;
-                            }
-                            token.append('"');
-                        }
-
-                    }
-                    if (i == inArray.length) {
-                        tokens.add(token);
-                        token = new StringBuffer();
-                    } else if (inArray[i] == ' ' && inArray[i] != '"') {
-                        tokens.add(token);
-                        token = new StringBuffer();
-                    }
-                }
-            } else {
-                throw new IllegalArgumentException(
-                        "Invalid command. Couldn't identify sequence at position "
-                                + valid);
-            }
-            for (StringBuffer tok : tokens) {
-                finalTokens.add(tok.toString());
-            }
-            return finalTokens;
-        }
-
-        private static int checkIfTheStringIsValid(char[] inArray) {
-            Stack myStack = new Stack<Character>();
-            int pos = 0;
-            for (int i = 0; i < inArray.length; i++) {
-                if (inArray[i] == '"' && (i == 0 || inArray[i - 1] != '\\')) {
-                    pos = i;
-                    if (myStack.isEmpty())
-                        myStack.push(inArray[i]);
-                    else
-                        myStack.pop();
-                }
-            }
-            if (myStack.isEmpty())
-                return -1;
-            else
-                return pos;
-        }
-
-        private static boolean checkIfLastQuote(char inArray[], int i) {
-            if (inArray[i] == '"') {
-                if (inArray[i - 1] == '\\') {
-                    return true;
-                } else
-                    return false;
-            } else
-                return true;
-        }
-    }
 }
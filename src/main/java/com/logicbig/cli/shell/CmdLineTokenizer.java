@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a command line into space separated tokens in a single pass. Double quoted sequences are kept together
+ * (including the quotes) and a quote preceded by a back slash is treated as escaped. Tokens are not copied, they are
+ * reported as start/end offsets of the original line. Empty tokens (caused by consecutive spaces) are skipped.
+ * <p>
+ * An escaped quote outside of a quoted sequence is not part of the token value; such tokens are flagged so that
+ * {@link #getToken(int)} can drop those quotes while materializing the value.
+ * <p>
+ * An instance can be reused for multiple lines but it is not thread safe.
+ *
+ * @author Joe Khan.
+ */
+final class CmdLineTokenizer {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private CharSequence line;
+    private int[] starts = new int[INITIAL_CAPACITY];
+    private int[] ends = new int[INITIAL_CAPACITY];
+    private boolean[] escapedQuotes = new boolean[INITIAL_CAPACITY];
+    private int tokenCount;
+
+    /**
+     * Tokenizes the provided range of the line.
+     *
+     * @param line the line to be tokenized
+     * @param from the start offset (inclusive)
+     * @param to   the end offset (exclusive)
+     * @return the number of tokens found
+     * @throws IllegalArgumentException if a quoted sequence is not closed
+     */
+    int tokenize(CharSequence line, int from, int to) {
+        this.line = line;
+        tokenCount = 0;
+
+        int tokenStart = from;
+        boolean escapedQuote = false;
+        int i = from;
+        while (i < to) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                addToken(tokenStart, i, escapedQuote);
+                tokenStart = i + 1;
+                escapedQuote = false;
+            } else if (c == '"') {
+                if (i == from || line.charAt(i - 1) != '\\') {
+                    int closing = findClosingQuote(line, i + 1, to);
+                    if (closing == -1) {
+                        throw new IllegalArgumentException(
+                                "Invalid command. Couldn't identify sequence at position " + (i - from));
+                    }
+                    i = closing;
+                } else {
+                    escapedQuote = true;
+                }
+            }
+            i++;
+        }
+        addToken(tokenStart, to, escapedQuote);
+        return tokenCount;
+    }
+
+    /**
+     * Splits a pipeline e.g. <code>cmdA args | cmdB</code> into the command lines of its stages. A '|' inside a
+     * double quoted sequence is not a separator. The stages are trimmed, a line without a separator is returned
+     * as the only stage.
+     *
+     * @param line the command line
+     * @return the command lines of the stages
+     */
+    static List<String> splitPipeline(String line) {
+        List<String> stages = null;
+        int stageStart = 0;
+        int to = line.length();
+        for (int i = 0; i < to; i++) {
+            char c = line.charAt(i);
+            if (c == '|') {
+                if (stages == null) {
+                    stages = new ArrayList<>();
+                }
+                stages.add(line.substring(stageStart, i).trim());
+                stageStart = i + 1;
+            } else if (c == '"' && (i == 0 || line.charAt(i - 1) != '\\')) {
+                int closing = findClosingQuote(line, i + 1, to);
+                if (closing == -1) {
+                    //reported by the tokenizer
+                    break;
+                }
+                i = closing;
+            }
+        }
+        if (stages == null) {
+            return Collections.singletonList(line);
+        }
+        stages.add(line.substring(stageStart).trim());
+        return stages;
+    }
+
+    private static int findClosingQuote(CharSequence line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line.charAt(i) == '"' && line.charAt(i - 1) != '\\') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addToken(int start, int end, boolean escapedQuote) {
+        if (start >= end) {
+            return;
+        }
+        if (tokenCount == starts.length) {
+            int newCapacity = tokenCount << 1;
+            starts = Arrays.copyOf(starts, newCapacity);
+            ends = Arrays.copyOf(ends, newCapacity);
+            escapedQuotes = Arrays.copyOf(escapedQuotes, newCapacity);
+        }
+        starts[tokenCount] = start;
+        ends[tokenCount] = end;
+        escapedQuotes[tokenCount] = escapedQuote;
+        tokenCount++;
+    }
+
+    int getTokenCount() {
+        return tokenCount;
+    }
+
+    CharSequence getLine() {
+        return line;
+    }
+
+    /**
+     * @return start offset (inclusive) of the token in the line
+     */
+    int getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @return end offset (exclusive) of the token in the line
+     */
+    int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return true if the token contains escaped quotes outside of a quoted sequence, in that case the raw slice
+     * differs from the token value and {@link #getToken(int)} should be used.
+     */
+    boolean hasEscapedQuote(int index) {
+        return escapedQuotes[index];
+    }
+
+    /**
+     * Materializes the token value.
+     */
+    String getToken(int index) {
+        int start = starts[index];
+        int end = ends[index];
+        if (!escapedQuotes[index]) {
+            return line.subSequence(start, end).toString();
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean quoted = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                boolean escaped = i > start && line.charAt(i - 1) == '\\';
+                if (!escaped) {
+                    quoted = !quoted;
+                } else if (!quoted) {
+                    continue;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a method annotated with @Command. The invoker is created once per command, so no reflective access
+ * checks are performed during dispatch.
+ *
+ * @author Joe Khan.
+ */
+@FunctionalInterface
+interface CommandInvoker {
+    MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /**
+     * Invokes the command method.
+     *
+     * @param handlerInstance the instance declaring the command method
+     * @param args            the method arguments in declaration order
+     * @return the method return value, null for void methods
+     * @throws InvocationTargetException wrapping the exception thrown by the command method
+     */
+    Object invoke(Object handlerInstance, Object[] args) throws InvocationTargetException;
+
+    /**
+     * Creates an invoker backed by a {@link MethodHandle} adapted to the fixed (Object, Object[])Object signature.
+     *
+     * @param method the command method
+     * @return the invoker
+     */
+    static CommandInvoker forMethod(Method method) {
+        MethodHandle handle;
+        try {
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException | RuntimeException e) {
+            throw new IllegalArgumentException("Command method is not accessible: " +
+                    method.getDeclaringClass().getName() + "#" + method.getName(), e);
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        MethodHandle generic = handle.asSpreader(Object[].class, method.getParameterCount()).asType(GENERIC_TYPE);
+        return (handlerInstance, args) -> {
+            try {
+                return (Object) generic.invokeExact(handlerInstance, args);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        };
+    }
+}
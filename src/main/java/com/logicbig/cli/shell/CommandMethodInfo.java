@@ -17,7 +17,6 @@
 package com.logicbig.cli.shell;
 
 import java.lang.reflect.Method;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -26,25 +25,82 @@ import java.util.Map;
  * @author Joe Khan.
  */
 class CommandMethodInfo {
-    private Method commandMethod;
-    private Object handlerInstance;
-    private Map<String, Class<?>> argumentFieldTypeMap = new LinkedHashMap<>();
+    private final String methodName;
+    private final CommandInvoker invoker;
+    private final ValueConverter[] converters;
+    private final LazyHandler handler;
+    private final Map<String, Class<?>> argumentFieldTypeMap;
+    private final int inputParameterIndex;
+    private final Class<?> inputType;
 
-    public CommandMethodInfo(Method commandMethod, Object handlerInstance, Map<String, Class<?>> argumentFieldTypeMap) {
-        this.commandMethod = commandMethod;
-        this.handlerInstance = handlerInstance;
+    public CommandMethodInfo(Method commandMethod, LazyHandler handler, Map<String, Class<?>> argumentFieldTypeMap,
+                             int inputParameterIndex, Class<?> inputType) {
+        this(commandMethod.getDeclaringClass().getName() + "#" + commandMethod.getName(),
+                CommandInvoker.forMethod(commandMethod), handler, argumentFieldTypeMap, inputParameterIndex, inputType);
+    }
+
+    /**
+     * @param methodName           the qualified method name used in messages, e.g. com.example.MyHandler#list
+     * @param invoker              the invoker of the command method
+     * @param handler              provides the instance declaring the command method
+     * @param argumentFieldTypeMap the option, option flag and argument names with their types, in the parameter order
+     * @param inputParameterIndex  the index of the parameter annotated with Input, -1 if there's none
+     * @param inputType            the type of the parameter annotated with Input, either Stream or Iterable
+     */
+    public CommandMethodInfo(String methodName, CommandInvoker invoker, LazyHandler handler,
+                             Map<String, Class<?>> argumentFieldTypeMap, int inputParameterIndex, Class<?> inputType) {
+        this.methodName = methodName;
+        this.inputParameterIndex = inputParameterIndex;
+        this.inputType = inputType;
+        this.invoker = invoker;
+        this.handler = handler;
         this.argumentFieldTypeMap = argumentFieldTypeMap;
+        this.converters = new ValueConverter[argumentFieldTypeMap.size()];
+        int i = 0;
+        for (Map.Entry<String, Class<?>> entry : argumentFieldTypeMap.entrySet()) {
+            converters[i] = ValueConverter.forType(entry.getValue());
+            if (converters[i] == null) {
+                throw new IllegalArgumentException("Method parameter type is not supported : " +
+                        entry.getValue().getName() + ", " + methodName);
+            }
+            i++;
+        }
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public CommandInvoker getInvoker() {
+        return invoker;
     }
 
-    public Method getCommandMethod() {
-        return commandMethod;
+    /**
+     * @return the converters of the method parameters, in the parameter order
+     */
+    public ValueConverter[] getConverters() {
+        return converters;
     }
 
+    /**
+     * @return the handler instance, created on the first call
+     */
     public Object getHandlerInstance() {
-        return handlerInstance;
+        return handler.get();
     }
 
     public Map<String, Class<?>> getArgumentFieldTypeMap() {
         return argumentFieldTypeMap;
     }
+
+    /**
+     * @return the index of the parameter receiving the piped input, -1 if the method doesn't accept input
+     */
+    public int getInputParameterIndex() {
+        return inputParameterIndex;
+    }
+
+    public Class<?> getInputType() {
+        return inputType;
+    }
 }
@@ -33,6 +33,9 @@ class CommandObject extends Describable {
     private final List<ArgumentObject> argumentObjects = new ArrayList<>();
     private Function<Map<String, String>, String> commandFunction;
     private CommandMethodInfo commandMethodInfo;
+    private volatile CommandPlan plan;
+    private volatile RenderedHelp renderedHelp;
+    private volatile CommandRegistry registry;
 
     CommandObject(String commandName, String description) {
         super(commandName, description);
@@ -40,21 +43,25 @@ class CommandObject extends Describable {
 
     CommandObject addOption(String optionName, String description, boolean mandatory, Class<?> type, String... validValues) {
         optionObjects.add(new OptionObject(optionName, description, mandatory, type, validValues));
+        definitionChanged();
         return this;
     }
 
     public CommandObject addOptionFlag(char flagName, String description) {
         optionFlagObjects.add(new OptionFlagObject(flagName, description));
+        definitionChanged();
         return this;
     }
 
     public CommandObject addArgument(String argumentName, String description) {
         argumentObjects.add(new ArgumentObject(argumentName, description, false, null));
+        definitionChanged();
         return this;
     }
 
     public CommandObject addArgument(String argumentName, String description, boolean mandatory, Class<?> type) {
         argumentObjects.add(new ArgumentObject(argumentName, description, mandatory, type));
+        definitionChanged();
         return this;
     }
 
@@ -98,5 +105,61 @@ class CommandObject extends Describable {
 
     public void setCommandMethodInfo(CommandMethodInfo commandMethodInfo) {
         this.commandMethodInfo = commandMethodInfo;
+        definitionChanged();
+    }
+
+    void setRegistry(CommandRegistry registry) {
+        this.registry = registry;
+    }
+
+    private void definitionChanged() {
+        plan = null;
+        renderedHelp = null;
+        CommandRegistry r = registry;
+        if (r != null) {
+            r.commandChanged();
+        }
+    }
+
+    /**
+     * Returns the compiled parse plan of this command. The plan is compiled on first access and recompiled only if
+     * the command definition changes afterwards.
+     *
+     * @return the parse plan
+     */
+    CommandPlan getPlan() {
+        CommandPlan p = plan;
+        if (p == null) {
+            p = CommandPlan.compile(this);
+            plan = p;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the help of this command rendered for the provided width. The help is rendered on first access and
+     * rendered again only if the command definition changes or another width is requested.
+     *
+     * @param width    the table width
+     * @param renderer renders the help of this command
+     * @return the rendered help
+     */
+    String getRenderedHelp(int width, Function<CommandObject, String> renderer) {
+        RenderedHelp help = renderedHelp;
+        if (help == null || help.width != width) {
+            help = new RenderedHelp(width, renderer.apply(this));
+            renderedHelp = help;
+        }
+        return help.text;
+    }
+
+    private static final class RenderedHelp {
+        private final int width;
+        private final String text;
+
+        private RenderedHelp(int width, String text) {
+            this.width = width;
+            this.text = text;
+        }
     }
 }
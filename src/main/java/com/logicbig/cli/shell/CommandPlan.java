@@ -0,0 +1,364 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.*;
+
+/**
+ * Immutable parse and validation plan of a {@link CommandObject}. It's compiled once per command, so that parsing
+ * a line doesn't need to rebuild any lists out of the command definition.
+ * <p>
+ * Each option and argument is assigned a value slot:
+ * <pre>[options...][arguments (mandatory first)...]</pre>
+ * A parsed line is then just an array of values indexed by those slots. The mandatory and the entered options are
+ * kept as a bitmask with one bit per option slot, in as many longs as needed. Option flags are ASCII letters, so
+ * the declared and the entered flags are kept as a bitmask of two longs, see {@link #isFlagSet(long, long, char)}.
+ *
+ * @author Joe Khan.
+ */
+final class CommandPlan {
+    private final String commandName;
+
+    private final String[] optionNames;
+    private final String[] optionHashTable;
+    private final int[] optionHashSlots;
+    private final long[] mandatoryOptionMask;
+    private final String mandatoryOptionsMessage;
+    private final Set<?>[] allowedValues;
+    private final String[] defaultValues;
+    private final String[] allowedValuesMessages;
+
+    private final String[] argumentNames;
+    private final int mandatoryArgumentCount;
+    private final String mandatoryArgumentsMessage;
+
+    private final char[] flagNames;
+    private final long flagMaskLow;
+    private final long flagMaskHigh;
+
+    private final String[] parameterNames;
+    private final Class<?>[] parameterTypes;
+    private final int[] parameterSlots;
+    private final char[] parameterFlags;
+
+    private CommandPlan(CommandObject commandObject) {
+        commandName = commandObject.getName();
+
+        List<OptionObject> options = commandObject.getOptionObjects();
+        int optionCount = options.size();
+        optionNames = new String[optionCount];
+        allowedValues = new Set<?>[optionCount];
+        defaultValues = new String[optionCount];
+        allowedValuesMessages = new String[optionCount];
+        mandatoryOptionMask = new long[getOptionMaskLength(optionCount)];
+        List<String> mandatoryOptionNames = new ArrayList<>();
+        for (int i = 0; i < optionCount; i++) {
+            OptionObject option = options.get(i);
+            optionNames[i] = option.getName();
+            if (option.isMandatory()) {
+                setOptionBit(mandatoryOptionMask, i);
+                mandatoryOptionNames.add(option.getName());
+            }
+            List<String> validValues = option.getValidValues();
+            if (validValues != null && validValues.size() > 0) {
+                allowedValues[i] = new HashSet<>(validValues);
+                defaultValues[i] = validValues.get(0);
+                allowedValuesMessages[i] = "Error: Option value should be one of : " + validValues + ". Found : ";
+            }
+        }
+        mandatoryOptionsMessage = "Error: All mandatory options must be provided : " + mandatoryOptionNames;
+
+        int tableSize = 2;
+        while (tableSize < optionCount * 2) {
+            tableSize <<= 1;
+        }
+        optionHashTable = new String[tableSize];
+        optionHashSlots = new int[tableSize];
+        for (int i = 0; i < optionCount; i++) {
+            int index = hash(optionNames[i], 0, optionNames[i].length()) & (tableSize - 1);
+            while (optionHashTable[index] != null) {
+                if (optionHashTable[index].equals(optionNames[i])) {
+                    throw new IllegalArgumentException("Option defined more than once :" + optionNames[i] +
+                            ", command: " + commandName);
+                }
+                index = (index + 1) & (tableSize - 1);
+            }
+            optionHashTable[index] = optionNames[i];
+            optionHashSlots[index] = i;
+        }
+
+        List<ArgumentObject> arguments = commandObject.getArgumentObjects();
+        argumentNames = new String[arguments.size()];
+        List<String> mandatoryArgumentNames = new ArrayList<>();
+        int a = 0;
+        for (ArgumentObject argument : arguments) {
+            if (argument.isMandatory()) {
+                argumentNames[a++] = argument.getName();
+                mandatoryArgumentNames.add(argument.getName());
+            }
+        }
+        mandatoryArgumentCount = a;
+        for (ArgumentObject argument : arguments) {
+            if (!argument.isMandatory()) {
+                argumentNames[a++] = argument.getName();
+            }
+        }
+        mandatoryArgumentsMessage = "Error: All mandatory arguments must be provided : " + mandatoryArgumentNames;
+
+        List<OptionFlagObject> flags = commandObject.getOptionFlagObjects();
+        flagNames = new char[flags.size()];
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < flagNames.length; i++) {
+            char flag = flags.get(i).getFlgName();
+            flagNames[i] = flag;
+            low |= lowBit(flag);
+            high |= highBit(flag);
+        }
+        flagMaskLow = low;
+        flagMaskHigh = high;
+
+        CommandMethodInfo info = commandObject.getCommandMethodInfo();
+        if (info != null) {
+            Map<String, Class<?>> typeMap = info.getArgumentFieldTypeMap();
+            parameterNames = new String[typeMap.size()];
+            parameterTypes = new Class<?>[typeMap.size()];
+            parameterSlots = new int[typeMap.size()];
+            parameterFlags = new char[typeMap.size()];
+            int p = 0;
+            for (Map.Entry<String, Class<?>> entry : typeMap.entrySet()) {
+                String name = entry.getKey();
+                parameterNames[p] = name;
+                parameterTypes[p] = entry.getValue();
+                // option flags take precedence over options and arguments of the same name
+                if (name.length() == 1 && isFlagDeclared(name.charAt(0))) {
+                    parameterFlags[p] = name.charAt(0);
+                    parameterSlots[p] = -1;
+                } else {
+                    parameterSlots[p] = resolveSlot(name);
+                }
+                p++;
+            }
+        } else {
+            parameterNames = new String[0];
+            parameterTypes = new Class<?>[0];
+            parameterSlots = new int[0];
+            parameterFlags = new char[0];
+        }
+    }
+
+    static CommandPlan compile(CommandObject commandObject) {
+        return new CommandPlan(commandObject);
+    }
+
+    // options take precedence over arguments
+    private int resolveSlot(String name) {
+        int slot = getOptionSlot(name, 0, name.length());
+        if (slot != -1) {
+            return slot;
+        }
+        for (int i = 0; i < argumentNames.length; i++) {
+            if (argumentNames[i].equals(name)) {
+                return getArgumentsOffset() + i;
+            }
+        }
+        throw new IllegalStateException("No slot found for " + name + ", command: " + commandName);
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        // same as String#hashCode
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the slot of the option with the provided name, or -1 if the command has no such option
+     */
+    int getOptionSlot(CharSequence s, int start, int end) {
+        int mask = optionHashTable.length - 1;
+        int length = end - start;
+        for (int index = hash(s, start, end) & mask; ; index = (index + 1) & mask) {
+            String name = optionHashTable[index];
+            if (name == null) {
+                return -1;
+            }
+            if (name.length() == length && regionMatches(name, s, start)) {
+                return optionHashSlots[index];
+            }
+        }
+    }
+
+    private static boolean regionMatches(String name, CharSequence s, int start) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of longs of a bitmask with one bit per option
+     */
+    static int getOptionMaskLength(int optionCount) {
+        return (optionCount + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    static void setOptionBit(long[] mask, int optionSlot) {
+        mask[optionSlot / Long.SIZE] |= 1L << optionSlot;
+    }
+
+    static long lowBit(char flag) {
+        return flag < 64 ? 1L << flag : 0;
+    }
+
+    static long highBit(char flag) {
+        return flag >= 64 && flag < 128 ? 1L << (flag - 64) : 0;
+    }
+
+    /**
+     * @param low  bits of the chars 0-63
+     * @param high bits of the chars 64-127
+     * @return true if the bit of the provided flag is set, always false for non ASCII chars
+     */
+    static boolean isFlagSet(long low, long high, char flag) {
+        return ((low & lowBit(flag)) | (high & highBit(flag))) != 0;
+    }
+
+    boolean isFlagDeclared(char flag) {
+        return isFlagSet(flagMaskLow, flagMaskHigh, flag);
+    }
+
+    long getFlagMaskLow() {
+        return flagMaskLow;
+    }
+
+    long getFlagMaskHigh() {
+        return flagMaskHigh;
+    }
+
+    String getCommandName() {
+        return commandName;
+    }
+
+    int getOptionCount() {
+        return optionNames.length;
+    }
+
+    String getOptionName(int slot) {
+        return optionNames[slot];
+    }
+
+    int getOptionMaskLength() {
+        return mandatoryOptionMask.length;
+    }
+
+    /**
+     * @return true if all mandatory options are set in the provided mask of the entered options
+     */
+    boolean hasMandatoryOptions(long[] optionMask) {
+        for (int i = 0; i < mandatoryOptionMask.length; i++) {
+            if ((optionMask[i] & mandatoryOptionMask[i]) != mandatoryOptionMask[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String getMandatoryOptionsMessage() {
+        return mandatoryOptionsMessage;
+    }
+
+    /**
+     * @return true if the option has no restriction on values or the value is one of the allowed values
+     */
+    boolean isAllowedValue(int optionSlot, String value) {
+        return allowedValues[optionSlot] == null || allowedValues[optionSlot].contains(value);
+    }
+
+    String getAllowedValuesMessage(int optionSlot) {
+        return allowedValuesMessages[optionSlot];
+    }
+
+    String getDefaultValue(int optionSlot) {
+        return defaultValues[optionSlot];
+    }
+
+    int getArgumentsOffset() {
+        return optionNames.length;
+    }
+
+    int getArgumentCount() {
+        return argumentNames.length;
+    }
+
+    String getArgumentName(int index) {
+        return argumentNames[index];
+    }
+
+    int getMandatoryArgumentCount() {
+        return mandatoryArgumentCount;
+    }
+
+    String getMandatoryArgumentsMessage() {
+        return mandatoryArgumentsMessage;
+    }
+
+    int getFlagCount() {
+        return flagNames.length;
+    }
+
+    char getFlagName(int index) {
+        return flagNames[index];
+    }
+
+    /**
+     * @return total number of value slots
+     */
+    int getSlotCount() {
+        return optionNames.length + argumentNames.length;
+    }
+
+    int getParameterCount() {
+        return parameterSlots.length;
+    }
+
+    String getParameterName(int index) {
+        return parameterNames[index];
+    }
+
+    Class<?> getParameterType(int index) {
+        return parameterTypes[index];
+    }
+
+    /**
+     * @return the value slot of the parameter, -1 if the parameter is an option flag
+     */
+    int getParameterSlot(int index) {
+        return parameterSlots[index];
+    }
+
+    /**
+     * @return the option flag bound to the parameter, or 0 if the parameter is not an option flag
+     */
+    char getParameterFlag(int index) {
+        return parameterFlags[index];
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the registered commands in registration order, indexed by the case folded command name. Command names are
+ * matched case insensitively, the same way as {@link String#equalsIgnoreCase(String)}. The registry version
+ * changes whenever a command is added or the definition of a registered command changes, so anything derived from
+ * the registered commands can be cached until then.
+ *
+ * @author Joe Khan.
+ */
+class CommandRegistry {
+    private final Map<String, CommandObject> commands = new LinkedHashMap<>();
+    private final Collection<CommandObject> commandsView = Collections.unmodifiableCollection(commands.values());
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * Registers the command.
+     *
+     * @throws IllegalArgumentException if a command with the same name (ignoring case) already exists
+     */
+    void add(CommandObject commandObject) {
+        String key = foldCase(commandObject.getName());
+        if (commands.containsKey(key)) {
+            throw new IllegalArgumentException("Command already exists please specify a different name: " +
+                    commandObject.getName());
+        }
+        commands.put(key, commandObject);
+        commandObject.setRegistry(this);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Called by a registered command when its definition changes.
+     */
+    void commandChanged() {
+        version.incrementAndGet();
+    }
+
+    int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return the command with the provided name (ignoring case) or null if not found
+     */
+    CommandObject find(String commandName) {
+        if (commandName == null) {
+            return null;
+        }
+        return commands.get(foldCase(commandName));
+    }
+
+    boolean contains(String commandName) {
+        return find(commandName) != null;
+    }
+
+    /**
+     * @return unmodifiable view of all commands in registration order
+     */
+    Collection<CommandObject> getCommands() {
+        return commandsView;
+    }
+
+    int size() {
+        return commands.size();
+    }
+
+    /**
+     * Folds each char the same way {@link String#equalsIgnoreCase(String)} compares them. The same instance is
+     * returned if nothing changes.
+     */
+    static String foldCase(String name) {
+        int length = name.length();
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (fold(c) != c) {
+                char[] chars = name.toCharArray();
+                for (int j = i; j < length; j++) {
+                    chars[j] = fold(chars[j]);
+                }
+                return new String(chars);
+            }
+        }
+        return name;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
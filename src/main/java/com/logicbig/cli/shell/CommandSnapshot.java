@@ -0,0 +1,417 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Binary index of the command metadata of runtime scanned handler classes. Each handler class entry is stamped with
+ * the CRC32 and the length of its class file, so a changed class is detected without loading it. The commands of an
+ * up to date entry are registered without scanning the annotations, the handler class is loaded on the first
+ * invocation.
+ *
+ * @author Joe Khan.
+ */
+final class CommandSnapshot {
+    private static final int MAGIC = 0x51434c49;
+    private static final int VERSION = 2;
+
+    private static final byte OPTION = 0;
+    private static final byte OPTION_FLAG = 1;
+    private static final byte ARGUMENT = 2;
+    private static final byte INPUT = 3;
+
+    private static final Map<String, Class<?>> PRIMITIVE_TYPES = new HashMap<>();
+
+    static {
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, short.class, int.class, long.class,
+                float.class, double.class}) {
+            PRIMITIVE_TYPES.put(type.getName(), type);
+        }
+    }
+
+    private final Map<String, Group> groups = new LinkedHashMap<>();
+
+    private CommandSnapshot() {
+    }
+
+    /**
+     * Reads the snapshot file. A missing, unreadable or incompatible file results in an empty snapshot, so that
+     * all handler classes are scanned again.
+     *
+     * @param file the snapshot file
+     * @return the snapshot, never null
+     */
+    static CommandSnapshot read(File file) {
+        CommandSnapshot snapshot = new CommandSnapshot();
+        if (!file.isFile()) {
+            return snapshot;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return snapshot;
+            }
+            int groupCount = in.readInt();
+            for (int g = 0; g < groupCount; g++) {
+                String className = in.readUTF();
+                long stamp = in.readLong();
+                int commandCount = in.readInt();
+                List<CommandEntry> commands = new ArrayList<>(commandCount);
+                for (int c = 0; c < commandCount; c++) {
+                    commands.add(CommandEntry.read(in));
+                }
+                snapshot.groups.put(className, new Group(stamp, commands));
+            }
+        } catch (IOException e) {
+            snapshot.groups.clear();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, then moves it to the target, so that a concurrently starting
+     * shell never reads a partially written snapshot.
+     *
+     * @param file the snapshot file
+     * @throws IOException if the snapshot couldn't be written
+     */
+    void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create directory: " + parent);
+        }
+        File tempFile = new File(parent, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(groups.size());
+            for (Map.Entry<String, Group> entry : groups.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().stamp);
+                out.writeInt(entry.getValue().commands.size());
+                for (CommandEntry command : entry.getValue().commands) {
+                    command.write(out);
+                }
+            }
+        }
+        if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+            tempFile.delete();
+            throw new IOException("Couldn't write snapshot: " + file);
+        }
+    }
+
+    /**
+     * @param className the handler class name
+     * @param stamp     the current stamp of the handler class
+     * @return true if there's an entry for the handler class with the same stamp
+     */
+    boolean isUpToDate(String className, long stamp) {
+        Group group = groups.get(className);
+        return group != null && group.stamp == stamp;
+    }
+
+    /**
+     * Registers the commands of the provided handler class from its snapshot entry.
+     *
+     * @param className   the handler class name
+     * @param classLoader the class loader to load the handler class with, on first invocation
+     * @param registrar   the registrar to register the commands with
+     */
+    void registerCommands(String className, ClassLoader classLoader, GeneratedCommands.Registrar registrar) {
+        for (CommandEntry command : groups.get(className).commands) {
+            command.register(className, classLoader, registrar);
+        }
+    }
+
+    /**
+     * Creates or replaces the entry of the provided handler class.
+     *
+     * @param className the handler class name
+     * @param stamp     the current stamp of the handler class
+     * @param commands  the commands scanned from the handler class
+     */
+    void put(String className, long stamp, Collection<CommandObject> commands) {
+        List<CommandEntry> entries = new ArrayList<>(commands.size());
+        for (CommandObject command : commands) {
+            entries.add(CommandEntry.of(command));
+        }
+        groups.put(className, new Group(stamp, entries));
+    }
+
+    /**
+     * Removes the entries of the provided handler classes and of the handler classes whose class file can't be
+     * found anymore. The entries of the other handler classes are kept, they may have been added by another
+     * registration sharing the snapshot file.
+     *
+     * @param classNames  the names of the handler classes which are no longer kept in the snapshot
+     * @param classLoader the class loader to find the class files with
+     * @return true if any entry has been removed
+     */
+    boolean removeStale(Set<String> classNames, ClassLoader classLoader) {
+        return groups.keySet().removeIf(className -> classNames.contains(className) ||
+                classLoader.getResource(className.replace('.', '/') + ".class") == null);
+    }
+
+    /**
+     * Computes the stamp of the provided class from its class file, without loading the class.
+     *
+     * @param className   the class name
+     * @param classLoader the class loader to find the class file with
+     * @return the stamp or -1 if the class file couldn't be found
+     */
+    static long stamp(String className, ClassLoader classLoader) {
+        InputStream stream = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+        if (stream == null) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        long length = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = stream) {
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                crc.update(buffer, 0, read);
+                length += read;
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return length << 32 | crc.getValue();
+    }
+
+    private static final class Group {
+        private final long stamp;
+        private final List<CommandEntry> commands;
+
+        private Group(long stamp, List<CommandEntry> commands) {
+            this.stamp = stamp;
+            this.commands = commands;
+        }
+    }
+
+    private static final class ParameterEntry {
+        private final byte kind;
+        private final String name;
+        private final String desc;
+        private final boolean mandatory;
+        private final String typeName;
+        private final String[] valuesAllowed;
+
+        private ParameterEntry(byte kind, String name, String desc, boolean mandatory, String typeName,
+                               String[] valuesAllowed) {
+            this.kind = kind;
+            this.name = name;
+            this.desc = desc;
+            this.mandatory = mandatory;
+            this.typeName = typeName;
+            this.valuesAllowed = valuesAllowed;
+        }
+    }
+
+    private static final class CommandEntry {
+        private final String name;
+        private final String desc;
+        private final String methodName;
+        private final List<ParameterEntry> parameters;
+
+        private CommandEntry(String name, String desc, String methodName, List<ParameterEntry> parameters) {
+            this.name = name;
+            this.desc = desc;
+            this.methodName = methodName;
+            this.parameters = parameters;
+        }
+
+        private static CommandEntry of(CommandObject command) {
+            CommandPlan plan = command.getPlan();
+            List<ParameterEntry> parameters = new ArrayList<>(plan.getParameterCount());
+            for (int p = 0; p < plan.getParameterCount(); p++) {
+                String name = plan.getParameterName(p);
+                String typeName = plan.getParameterType(p).getName();
+                if (plan.getParameterFlag(p) != 0) {
+                    OptionFlagObject flag = find(command.getOptionFlagObjects(), name);
+                    parameters.add(new ParameterEntry(OPTION_FLAG, name, flag.getDescription(), false, typeName,
+                            null));
+                } else if (plan.getParameterSlot(p) < plan.getArgumentsOffset()) {
+                    OptionObject option = find(command.getOptionObjects(), name);
+                    List<String> validValues = option.getValidValues();
+                    parameters.add(new ParameterEntry(OPTION, name, option.getDescription(), option.isMandatory(),
+                            typeName, validValues == null ? null : validValues.toArray(new String[0])));
+                } else {
+                    ArgumentObject argument = find(command.getArgumentObjects(), name);
+                    parameters.add(new ParameterEntry(ARGUMENT, name, argument.getDescription(),
+                            argument.isMandatory(), typeName, null));
+                }
+            }
+            CommandMethodInfo info = command.getCommandMethodInfo();
+            if (info.getInputParameterIndex() != -1) {
+                parameters.add(info.getInputParameterIndex(), new ParameterEntry(INPUT, "", null, false,
+                        info.getInputType().getName(), null));
+            }
+            return new CommandEntry(command.getName(), command.getDescription(), info.getMethodName(), parameters);
+        }
+
+        private static <T extends Describable> T find(List<T> list, String name) {
+            for (T t : list) {
+                if (t.getName().equals(name)) {
+                    return t;
+                }
+            }
+            throw new IllegalStateException("Parameter not found: " + name);
+        }
+
+        private static CommandEntry read(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            String desc = readNullable(in);
+            String methodName = in.readUTF();
+            int parameterCount = in.readInt();
+            List<ParameterEntry> parameters = new ArrayList<>(parameterCount);
+            for (int p = 0; p < parameterCount; p++) {
+                byte kind = in.readByte();
+                String parameterName = in.readUTF();
+                String parameterDesc = readNullable(in);
+                boolean mandatory = in.readBoolean();
+                String typeName = in.readUTF();
+                String[] valuesAllowed = null;
+                int valueCount = in.readInt();
+                if (valueCount >= 0) {
+                    valuesAllowed = new String[valueCount];
+                    for (int v = 0; v < valueCount; v++) {
+                        valuesAllowed[v] = in.readUTF();
+                    }
+                }
+                parameters.add(new ParameterEntry(kind, parameterName, parameterDesc, mandatory, typeName,
+                        valuesAllowed));
+            }
+            return new CommandEntry(name, desc, methodName, parameters);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            writeNullable(out, desc);
+            out.writeUTF(methodName);
+            out.writeInt(parameters.size());
+            for (ParameterEntry parameter : parameters) {
+                out.writeByte(parameter.kind);
+                out.writeUTF(parameter.name);
+                writeNullable(out, parameter.desc);
+                out.writeBoolean(parameter.mandatory);
+                out.writeUTF(parameter.typeName);
+                if (parameter.valuesAllowed == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(parameter.valuesAllowed.length);
+                    for (String value : parameter.valuesAllowed) {
+                        out.writeUTF(value);
+                    }
+                }
+            }
+        }
+
+        private void register(String className, ClassLoader classLoader, GeneratedCommands.Registrar registrar) {
+            String[] parameterTypeNames = new String[parameters.size()];
+            for (int p = 0; p < parameterTypeNames.length; p++) {
+                parameterTypeNames[p] = parameters.get(p).typeName;
+            }
+            String simpleMethodName = methodName.substring(methodName.lastIndexOf('#') + 1);
+            GeneratedCommands.CommandDefinition definition = registrar.command(name, desc, methodName,
+                    new MethodDispatcher(className, simpleMethodName, parameterTypeNames, classLoader));
+            for (ParameterEntry parameter : parameters) {
+                Class<?> type = loadType(parameter.typeName, classLoader);
+                switch (parameter.kind) {
+                    case OPTION:
+                        definition.option(parameter.name, parameter.desc, parameter.mandatory, type,
+                                parameter.valuesAllowed);
+                        break;
+                    case OPTION_FLAG:
+                        definition.optionFlag(parameter.name.charAt(0), parameter.desc, type);
+                        break;
+                    case INPUT:
+                        definition.input(type);
+                        break;
+                    default:
+                        definition.argument(parameter.name, parameter.desc, parameter.mandatory, type);
+                }
+            }
+            definition.register();
+        }
+
+        private static String readNullable(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        private static void writeNullable(DataOutputStream out, String s) throws IOException {
+            out.writeBoolean(s != null);
+            if (s != null) {
+                out.writeUTF(s);
+            }
+        }
+    }
+
+    private static Class<?> loadType(String typeName, ClassLoader classLoader) {
+        Class<?> type = PRIMITIVE_TYPES.get(typeName);
+        if (type != null) {
+            return type;
+        }
+        try {
+            return Class.forName(typeName, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Parameter type not found: " + typeName, e);
+        }
+    }
+
+    /**
+     * Resolves the command method on the first invocation.
+     */
+    private static final class MethodDispatcher implements GeneratedCommands.Dispatcher {
+        private final String className;
+        private final String methodName;
+        private final String[] parameterTypeNames;
+        private final ClassLoader classLoader;
+        private volatile CommandInvoker invoker;
+
+        private MethodDispatcher(String className, String methodName, String[] parameterTypeNames,
+                                 ClassLoader classLoader) {
+            this.className = className;
+            this.methodName = methodName;
+            this.parameterTypeNames = parameterTypeNames;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public Object dispatch(Object handler, Object[] args) throws Throwable {
+            CommandInvoker commandInvoker = invoker;
+            if (commandInvoker == null) {
+                Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
+                for (int p = 0; p < parameterTypes.length; p++) {
+                    parameterTypes[p] = loadType(parameterTypeNames[p], classLoader);
+                }
+                Method method = Class.forName(className, false, classLoader)
+                        .getDeclaredMethod(methodName, parameterTypes);
+                commandInvoker = CommandInvoker.forMethod(method);
+                invoker = commandInvoker;
+            }
+            try {
+                return commandInvoker.invoke(handler, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
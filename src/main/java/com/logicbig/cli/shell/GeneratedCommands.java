@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+/**
+ * Command registry of a single command handler class, generated at compile time by
+ * {@link com.logicbig.cli.processor.CommandProcessor}. It defines the commands and dispatches them without any
+ * reflection. {@link QuickCLIShell#scanCommands(Class[])} uses the generated registry if one is found for the
+ * handler class, otherwise it scans the handler class annotations at runtime.
+ * <p>
+ * This interface is not supposed to be implemented manually.
+ *
+ * @author Joe Khan.
+ */
+public interface GeneratedCommands {
+
+    /**
+     * The generated class is placed in the package of the handler class and is named after the handler class
+     * (nested class names joined with '_') followed by this suffix.
+     */
+    String CLASS_NAME_SUFFIX = "_QuickCLICommands";
+
+    /**
+     * @return the command handler class this registry has been generated for
+     */
+    Class<?> getHandlerClass();
+
+    /**
+     * Creates the handler instance. It's called only when a command of the handler is invoked for the first time.
+     * Until then, the handler class doesn't need to be loaded.
+     *
+     * @return a new instance of the command handler class
+     */
+    Object newHandler();
+
+    /**
+     * Defines all commands of the handler class.
+     *
+     * @param registrar the registrar provided by the shell
+     */
+    void registerCommands(Registrar registrar);
+
+    /**
+     * Returns the name of the class which would be generated for the provided handler class.
+     *
+     * @param handlerClass the command handler class
+     * @return the fully qualified name of the generated class
+     */
+    static String getGeneratedClassName(Class<?> handlerClass) {
+        return getGeneratedClassName(handlerClass.getName());
+    }
+
+    /**
+     * Returns the name of the class which would be generated for the provided handler class name.
+     *
+     * @param handlerClassName the binary name of the command handler class
+     * @return the fully qualified name of the generated class
+     */
+    static String getGeneratedClassName(String handlerClassName) {
+        String name = handlerClassName;
+        int i = name.lastIndexOf('.');
+        return name.substring(0, i + 1) + name.substring(i + 1).replace('$', '_') + CLASS_NAME_SUFFIX;
+    }
+
+    /**
+     * Receives the command definitions from the generated code.
+     */
+    interface Registrar {
+
+        /**
+         * Starts a new command definition.
+         *
+         * @param name       the command name
+         * @param desc       the command description
+         * @param methodName the qualified name of the command method, used in messages
+         * @param dispatcher calls the command method
+         * @return the definition to which the method parameters are added in the declaration order
+         */
+        CommandDefinition command(String name, String desc, String methodName, Dispatcher dispatcher);
+    }
+
+    /**
+     * Defines the parameters of a command method in the declaration order.
+     */
+    interface CommandDefinition {
+
+        CommandDefinition option(String name, String desc, boolean mandatory, Class<?> type, String... valuesAllowed);
+
+        CommandDefinition optionFlag(char name, String desc, Class<?> type);
+
+        CommandDefinition argument(String name, String desc, boolean mandatory, Class<?> type);
+
+        /**
+         * Defines the parameter receiving the piped input.
+         *
+         * @param type either Stream or Iterable
+         */
+        CommandDefinition input(Class<?> type);
+
+        /**
+         * Completes the command definition.
+         */
+        void register();
+    }
+
+    /**
+     * Calls the command method with already converted arguments.
+     */
+    @FunctionalInterface
+    interface Dispatcher {
+
+        /**
+         * @param handler the handler instance
+         * @param args    the method arguments in declaration order
+         * @return the method return value, null for void methods
+         * @throws Throwable anything thrown by the command method
+         */
+        Object dispatch(Object handler, Object[] args) throws Throwable;
+    }
+}
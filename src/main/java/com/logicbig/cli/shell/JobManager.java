@@ -0,0 +1,305 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs commands in the background and delivers their output to the console. The output of a finished job is
+ * printed as a whole, in the order the jobs finish. While the shell is waiting for input, the output is printed
+ * right away followed by the prompt again, otherwise it's printed before the next prompt, so it never gets mixed
+ * with the output of the foreground command.
+ *
+ * @author Joe Khan.
+ */
+final class JobManager {
+    private final Map<Integer, Job> jobs = new ConcurrentSkipListMap<>();
+    private final AtomicInteger jobIds = new AtomicInteger();
+    private final Queue<String> finishedOutputs = new ConcurrentLinkedQueue<>();
+    private final Consumer<String> printer;
+    private final ShellOutput output;
+    private final Object consoleLock = new Object();
+    private volatile ExecutorService executor;
+    private String prompt;
+
+    /**
+     * @param printer prints a line to the console
+     * @param output  the shell output, the prompt is printed to it
+     */
+    JobManager(Consumer<String> printer, ShellOutput output) {
+        this.printer = printer;
+        this.output = output;
+    }
+
+    /**
+     * Runs the provided command on the job executor.
+     *
+     * @param commandLine the command line, used in the job status
+     * @param command     the command invocation, its result is printed if it's a String, a sequence of lines
+     *                    (see {@link ResultLines}) or a {@link CompletionStage} of String
+     * @return the job id
+     */
+    int submit(String commandLine, Callable<Object> command) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            StringBuilder output = OutputCapture.start();
+            Object result = null;
+            Throwable error = null;
+            try {
+                result = command.call();
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                //the job output is printed from this thread if the shell is waiting for input
+                OutputCapture.stop();
+            }
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                complete(future, output, result);
+            }
+        }, null);
+        //the task is created before the job is published, so it can be cancelled as soon as the job is listed
+        Job job = newJob(commandLine, future, task);
+        getExecutor().execute(task);
+        return job.id;
+    }
+
+    /**
+     * Tracks an asynchronous result returned by a command.
+     *
+     * @param commandLine the command line, used in the job status
+     * @param result      the result returned by the command method
+     * @return the job id
+     */
+    int add(String commandLine, CompletionStage<?> result) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Job job = newJob(commandLine, future, result instanceof Future ? (Future<?>) result : null);
+        complete(future, new StringBuilder(), result);
+        return job.id;
+    }
+
+    /*
+     * The job is fully initialized before it's put in the job map, as it's read from other threads through the map.
+     * Its future can only complete after that, because the command hasn't been started yet.
+     */
+    private Job newJob(String commandLine, CompletableFuture<String> future, Future<?> task) {
+        int id = jobIds.incrementAndGet();
+        CompletableFuture<?> reported = future.whenComplete((output, error) ->
+                finished(id, commandLine, future, output, error));
+        Job job = new Job(id, commandLine, future, task, reported);
+        jobs.put(id, job);
+        return job;
+    }
+
+    private static void complete(CompletableFuture<String> future, StringBuilder output, Object result) {
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, error) -> {
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    complete(future, output, value);
+                }
+            });
+        } else if (result instanceof String || ResultLines.isSequence(result)) {
+            try {
+                ResultLines.forEach(result, line -> OutputCapture.appendLine(output, line));
+                future.complete(output.toString());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        } else {
+            future.complete(output.toString());
+        }
+    }
+
+    private void finished(int id, String commandLine, CompletableFuture<String> future, String output,
+                          Throwable error) {
+        StringBuilder report = new StringBuilder("[" + id + "] ");
+        if (future.isCancelled()) {
+            report.append("Cancelled ").append(commandLine);
+        } else if (error != null) {
+            Throwable cause = error;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            report.append("Failed ").append(commandLine).append('\n').append("Error: ").append(cause);
+        } else {
+            report.append("Done ").append(commandLine);
+            if (!output.isEmpty()) {
+                report.append('\n').append(output);
+            }
+        }
+        //a job missing from the job map has already been reported, see await
+        finishedOutputs.add(report.toString());
+        jobs.remove(id);
+        synchronized (consoleLock) {
+            if (prompt != null) {
+                this.output.printLine("");
+                printFinished();
+                this.output.print(prompt);
+                this.output.flush();
+            }
+        }
+    }
+
+    private void printFinished() {
+        for (String output; (output = finishedOutputs.poll()) != null; ) {
+            printer.accept(output);
+        }
+    }
+
+    /**
+     * Prints the output of the jobs finished meanwhile, followed by the prompt. Jobs finishing before
+     * {@link #promptAnswered()} is called print their output immediately.
+     *
+     * @param prompt the prompt to print
+     */
+    void showPrompt(String prompt) {
+        synchronized (consoleLock) {
+            printFinished();
+            output.print(prompt);
+            output.flush();
+            this.prompt = prompt;
+        }
+    }
+
+    /**
+     * Prints the output of the jobs finished meanwhile.
+     */
+    void printFinishedJobs() {
+        synchronized (consoleLock) {
+            printFinished();
+        }
+    }
+
+    /**
+     * Called after a line has been read, the output of the jobs is held back until the next prompt.
+     */
+    void promptAnswered() {
+        synchronized (consoleLock) {
+            prompt = null;
+        }
+    }
+
+    /**
+     * @return the jobs which have not finished yet, ordered by id
+     */
+    Collection<Job> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Waits for the provided job, or for all jobs if the id is null.
+     *
+     * @param id the job id or null
+     * @return false if there's no job with the provided id
+     */
+    boolean await(Integer id) throws InterruptedException {
+        List<Job> awaited = new ArrayList<>();
+        if (id == null) {
+            awaited.addAll(jobs.values());
+        } else if (jobs.containsKey(id)) {
+            awaited.add(jobs.get(id));
+        } else {
+            return false;
+        }
+        for (Job job : awaited) {
+            try {
+                job.reported.get();
+            } catch (ExecutionException | CancellationException e) {
+                //reported with the job output
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cancels the provided job. A job started with '&' is interrupted, an asynchronous command result is
+     * cancelled.
+     *
+     * @param id the job id
+     * @return false if there's no job with the provided id
+     */
+    boolean cancel(int id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return false;
+        }
+        job.future.cancel(true);
+        if (job.task != null) {
+            job.task.cancel(true);
+        }
+        return true;
+    }
+
+    private ExecutorService getExecutor() {
+        ExecutorService result = executor;
+        if (result == null) {
+            synchronized (this) {
+                result = executor;
+                if (result == null) {
+                    AtomicInteger threadIds = new AtomicInteger();
+                    result = Executors.newCachedThreadPool(runnable -> {
+                        Thread thread = new Thread(runnable, "quickcli-job-" + threadIds.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    static final class Job {
+        private final int id;
+        private final String commandLine;
+        private final CompletableFuture<String> future;
+        private final long startTime = System.currentTimeMillis();
+        private final Future<?> task;
+        private final CompletableFuture<?> reported;
+
+        private Job(int id, String commandLine, CompletableFuture<String> future, Future<?> task,
+                    CompletableFuture<?> reported) {
+            this.id = id;
+            this.commandLine = commandLine;
+            this.future = future;
+            this.task = task;
+            this.reported = reported;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getCommandLine() {
+            return commandLine;
+        }
+
+        long getStartTime() {
+            return startTime;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Creates the command handler instance on first use. All commands of a handler class share the same instance.
+ * The creation is thread safe and happens only once, unless the handler constructor fails, in which case it's
+ * attempted again on the next use.
+ *
+ * @author Joe Khan.
+ */
+final class LazyHandler {
+    private final Callable<Object> factory;
+    private volatile Object instance;
+
+    LazyHandler(Callable<Object> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return the handler instance
+     * @throws RuntimeException if the handler could not be created
+     */
+    Object get() {
+        Object result = instance;
+        if (result == null) {
+            synchronized (this) {
+                result = instance;
+                if (result == null) {
+                    try {
+                        result = factory.call();
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.function.LongFunction;
+
+/**
+ * Parses the entered values to numbers without throwing {@link NumberFormatException}. The accepted syntax is the
+ * same as of the corresponding JDK parse methods (e.g. {@link Integer#parseInt(String)},
+ * {@link Double#parseDouble(String)}, {@link BigDecimal#BigDecimal(String)}). Invalid values, including null,
+ * are reported by returning {@link ValueConverter#INVALID}, so a malformed input doesn't cost a stack trace.
+ *
+ * @author Joe Khan.
+ */
+final class NumberParser {
+
+    private NumberParser() {
+    }
+
+    static Object parseByte(String s) {
+        return parseIntegral(s, Byte.MIN_VALUE, Byte.MAX_VALUE, v -> (byte) v);
+    }
+
+    static Object parseShort(String s) {
+        return parseIntegral(s, Short.MIN_VALUE, Short.MAX_VALUE, v -> (short) v);
+    }
+
+    static Object parseInt(String s) {
+        return parseIntegral(s, Integer.MIN_VALUE, Integer.MAX_VALUE, v -> (int) v);
+    }
+
+    static Object parseLong(String s) {
+        return parseIntegral(s, Long.MIN_VALUE, Long.MAX_VALUE, v -> v);
+    }
+
+    static Object parseFloat(String s) {
+        return isValidFloatingPoint(s) ? (Object) Float.parseFloat(s) : ValueConverter.INVALID;
+    }
+
+    static Object parseDouble(String s) {
+        return isValidFloatingPoint(s) ? (Object) Double.parseDouble(s) : ValueConverter.INVALID;
+    }
+
+    static Object parseBigInteger(String s) {
+        if (s == null) {
+            return ValueConverter.INVALID;
+        }
+        int i = skipSign(s, 0);
+        if (i == s.length() || !isDecimalDigits(s, i, s.length())) {
+            return ValueConverter.INVALID;
+        }
+        return new BigInteger(s);
+    }
+
+    static Object parseBigDecimal(String s) {
+        if (!isValidBigDecimal(s)) {
+            return ValueConverter.INVALID;
+        }
+        try {
+            return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+            // the syntax is valid but the scale is out of the int range
+            return ValueConverter.INVALID;
+        }
+    }
+
+    /*
+     * Accumulates negatively the same way as Long#parseLong, so that the min value of each type can be parsed.
+     */
+    private static Object parseIntegral(String s, long min, long max, LongFunction<Object> boxing) {
+        if (s == null || s.length() == 0) {
+            return ValueConverter.INVALID;
+        }
+        boolean negative = s.charAt(0) == '-';
+        long limit = negative ? min : -max;
+        int i = skipSign(s, 0);
+        if (i == s.length()) {
+            return ValueConverter.INVALID;
+        }
+        long multiplyMin = limit / 10;
+        long result = 0;
+        while (i < s.length()) {
+            int digit = Character.digit(s.charAt(i++), 10);
+            if (digit < 0 || result < multiplyMin) {
+                return ValueConverter.INVALID;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return ValueConverter.INVALID;
+            }
+            result -= digit;
+        }
+        return boxing.apply(negative ? result : -result);
+    }
+
+    private static boolean isValidBigDecimal(String s) {
+        if (s == null) {
+            return false;
+        }
+        int length = s.length();
+        int i = skipSign(s, 0);
+        int digits = 0;
+        boolean dot = false;
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                if (dot) {
+                    return false;
+                }
+                dot = true;
+            } else if (Character.isDigit(c)) {
+                digits++;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i == length) {
+            return true;
+        }
+        char c = s.charAt(i);
+        if (c != 'e' && c != 'E') {
+            return false;
+        }
+        i = skipSign(s, i + 1);
+        if (i == length) {
+            return false;
+        }
+        long exponent = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            // the exponent must fit in an int
+            if (digit < 0 || (exponent = exponent * 10 + digit) > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Mirrors the grammar accepted by Double#parseDouble (see Double#valueOf(String)): leading and trailing white
+     * spaces, NaN, Infinity, decimal and hexadecimal forms with an optional type suffix.
+     */
+    private static boolean isValidFloatingPoint(String s) {
+        if (s == null) {
+            return false;
+        }
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return false;
+        }
+        int i = skipSign(s, start);
+        if (s.startsWith("NaN", i)) {
+            return i + 3 == end;
+        }
+        if (s.startsWith("Infinity", i)) {
+            return i + 8 == end;
+        }
+        if (i + 1 < end && s.charAt(i) == '0' && (s.charAt(i + 1) == 'x' || s.charAt(i + 1) == 'X')) {
+            return isValidHexFloatingPoint(s, i + 2, end);
+        }
+
+        int digits = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                if (dot) {
+                    return false;
+                }
+                dot = true;
+            } else if (c >= '0' && c <= '9') {
+                digits++;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i = skipExponentDigits(s, skipSign(s, i + 1), end);
+            if (i == -1) {
+                return false;
+            }
+        }
+        return isEndOrTypeSuffix(s, i, end);
+    }
+
+    private static boolean isValidHexFloatingPoint(String s, int i, int end) {
+        int digits = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                if (dot) {
+                    return false;
+                }
+                dot = true;
+            } else if (Character.digit(c, 16) >= 0 && c < 128) {
+                digits++;
+            } else {
+                break;
+            }
+        }
+        // the binary exponent is mandatory for hexadecimal floating point literals
+        if (digits == 0 || i == end || (s.charAt(i) != 'p' && s.charAt(i) != 'P')) {
+            return false;
+        }
+        i = skipExponentDigits(s, skipSign(s, i + 1), end);
+        return i != -1 && isEndOrTypeSuffix(s, i, end);
+    }
+
+    // returns the index after the exponent digits or -1 if there's no digit
+    private static int skipExponentDigits(String s, int i, int end) {
+        int start = i;
+        while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            i++;
+        }
+        return i == start ? -1 : i;
+    }
+
+    private static boolean isEndOrTypeSuffix(String s, int i, int end) {
+        if (i == end) {
+            return true;
+        }
+        char c = s.charAt(i);
+        return i + 1 == end && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+    }
+
+    private static boolean isDecimalDigits(String s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(s.charAt(i), 10) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSign(String s, int i) {
+        if (i < s.length() && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            return i + 1;
+        }
+        return i;
+    }
+}
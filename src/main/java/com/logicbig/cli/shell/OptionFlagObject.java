@@ -8,7 +8,7 @@ class OptionFlagObject extends Describable {
     protected OptionFlagObject(char flagName, String description) {
         super(Character.toString(flagName), description);
 
-        if (!Character.isLetter(flagName)) {
+        if (!((flagName >= 'a' && flagName <= 'z') || (flagName >= 'A' && flagName <= 'Z'))) {
             throw new IllegalArgumentException("The provided flagName has to be a letter of english alphabets: " + flagName);
         }
     }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.function.Consumer;
+
+/**
+ * Redirects the lines printed by a command running on the current thread instead of printing them to the console,
+ * so that the output of commands running concurrently can be printed as a whole, or passed to the next command of
+ * a pipeline.
+ *
+ * @author Joe Khan.
+ */
+final class OutputCapture {
+    private static final ThreadLocal<Consumer<String>> OUTPUT = new ThreadLocal<>();
+
+    private OutputCapture() {
+    }
+
+    /**
+     * Starts collecting the lines printed on the current thread.
+     *
+     * @return the buffer the lines are collected into, separated by '\n'
+     */
+    static StringBuilder start() {
+        StringBuilder output = new StringBuilder();
+        OUTPUT.set(line -> appendLine(output, line));
+        return output;
+    }
+
+    /**
+     * Starts redirecting the lines printed on the current thread.
+     *
+     * @param output receives the printed lines
+     */
+    static void start(Consumer<String> output) {
+        OUTPUT.set(output);
+    }
+
+    /**
+     * Stops redirecting the lines printed on the current thread.
+     */
+    static void stop() {
+        OUTPUT.remove();
+    }
+
+    /**
+     * @return true if the lines printed on the current thread are redirected
+     */
+    static boolean isActive() {
+        return OUTPUT.get() != null;
+    }
+
+    /**
+     * @param line the line to print
+     * @return false if the lines printed on the current thread are not redirected
+     */
+    static boolean print(String line) {
+        Consumer<String> output = OUTPUT.get();
+        if (output == null) {
+            return false;
+        }
+        output.accept(line);
+        return true;
+    }
+
+    static void appendLine(StringBuilder output, String line) {
+        if (output.length() > 0) {
+            output.append('\n');
+        }
+        output.append(line);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+/**
+ * What the shell does with its output when the asynchronous output queue is full, see
+ * {@link QuickCLIShell#setAsyncOutput(int, OutputOverflowPolicy)}.
+ *
+ * @author Joe Khan.
+ */
+public enum OutputOverflowPolicy {
+    /**
+     * Waits until the terminal has caught up, no output is lost.
+     */
+    BLOCK,
+    /**
+     * Discards the output, the discarded lines are counted (see {@link QuickCLIShell#getDroppedOutputLines()}).
+     */
+    DROP,
+    /**
+     * Merges the output into a single pending write, which is written once the queue has been drained. No output
+     * is lost and the shell never waits, but the pending output is held in memory.
+     */
+    COALESCE
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Bounded handoff of lines between two commands of a pipeline running concurrently. The writer blocks while the
+ * pipe is full, so the lines are never held in memory all together. Once the reader is done, further writes fail
+ * with {@link BrokenPipeException}, which stops the writing command.
+ *
+ * @author Joe Khan.
+ */
+final class Pipe {
+    private static final int CAPACITY = 1024;
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private volatile boolean readerClosed;
+
+    /**
+     * @return a pipe without any lines, used as the input of a command which is not piped
+     */
+    static Pipe empty() {
+        Pipe pipe = new Pipe();
+        pipe.closeWriter();
+        return pipe;
+    }
+
+    /**
+     * Thrown to the writing command if the reading command has finished.
+     */
+    static final class BrokenPipeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private BrokenPipeException() {
+            super("Broken pipe", null, false, false);
+        }
+    }
+
+    /**
+     * Writes a line, blocks while the pipe is full.
+     *
+     * @param line the line to write
+     * @throws BrokenPipeException if the reader has finished
+     */
+    void write(String line) {
+        if (readerClosed) {
+            throw new BrokenPipeException();
+        }
+        try {
+            queue.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BrokenPipeException();
+        }
+    }
+
+    /**
+     * Called by the writer after the last line.
+     */
+    void closeWriter() {
+        if (!readerClosed) {
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Called once the reading command has finished, the lines not read are discarded.
+     */
+    void closeReader() {
+        readerClosed = true;
+        //unblocks a waiting writer, which then sees the closed flag on its next write
+        queue.clear();
+    }
+
+    /**
+     * @return the lines written to the pipe, the iterator blocks until the next line is available
+     */
+    Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && readerClosed) {
+                    next = END;
+                } else if (next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        next = END;
+                    }
+                }
+                return next != END;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String line = (String) next;
+                next = null;
+                return line;
+            }
+        };
+    }
+
+    /**
+     * @param type either Stream or Iterable
+     * @return the lines written to the pipe as the provided type, which can only be consumed once
+     */
+    Object asInput(Class<?> type) {
+        if (type == Stream.class) {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(),
+                    Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+        return new Iterable<String>() {
+            private boolean iterated;
+
+            @Override
+            public Iterator<String> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("The piped input can only be iterated once");
+                }
+                iterated = true;
+                return Pipe.this.iterator();
+            }
+        };
+    }
+}
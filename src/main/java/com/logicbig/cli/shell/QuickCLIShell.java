@@ -19,17 +19,26 @@ package com.logicbig.cli.shell;
 
 import com.logicbig.cli.annotation.Argument;
 import com.logicbig.cli.annotation.Command;
+import com.logicbig.cli.annotation.Input;
 import com.logicbig.cli.annotation.Option;
 import com.logicbig.cli.annotation.OptionFlag;
 import com.logicbig.cli.text.table.TextTable;
+import com.logicbig.cli.text.table.TextTableLayout;
 
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * An easy to use Command Line Interface for Shell applications. The commands are based on linux standard syntax.
@@ -47,14 +56,31 @@ import java.util.stream.IntStream;
 public class QuickCLIShell extends Describable {
     private static final int MAX_CMD_LEN = 10;
     private static final String PADDING = "  ";
-    private static ConsoleWriter consoleWriter;
-    private List<CommandObject> commandObjects = new ArrayList<>();
+    private static final ThreadLocal<QuickCLIShell> COMMAND_SHELL = new ThreadLocal<>();
+    private static volatile QuickCLIShell lastCreatedShell;
+    private final ConsoleWriter consoleWriter = new ConsoleWriterImpl(this);
+    private final CommandRegistry commandRegistry = new CommandRegistry();
+    private final ShellOutput output = new ShellOutput();
+    private final JobManager jobManager = new JobManager(this::printOutput, output);
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
+    private static final long LINES_FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+    private boolean builtInCommandsAdded;
+    private volatile boolean interactive = true;
+    private volatile boolean batchExited;
+    private volatile boolean compactErrors;
+    private volatile int terminalWidth = 90;
+    private volatile CachedHelp briefHelp;
+    private volatile CachedHelp allHelp;
+    private volatile TextTableLayout helpLayout;
 
     private static final String LINE_BREAK = System.getProperty("line.separator");
+    private static final String LINE_SEPARATOR =
+            "---------------------------------------------------------------------------";
+    private static final String GENERAL_HELP_MESSAGE = renderGeneralHelpMessage();
 
     public QuickCLIShell(String name, String description) {
         super(name, description);
-        consoleWriter = new ConsoleWriterImpl(this);
+        lastCreatedShell = this;
     }
 
     private CommandObject addCommand(String commandName, String description) {
@@ -62,183 +88,311 @@ public class QuickCLIShell extends Describable {
             throw new IllegalArgumentException("Command Name cannot be null");
 
         }
-        if (findCommandByName(commandName) != null) {
-            throw new IllegalArgumentException("Command already exists please specify a different name: " + commandName);
-        }
         if (commandName.length() > MAX_CMD_LEN) {
             throw new IllegalArgumentException("Command name cannot be more than 10 charachters");
         }
         CommandObject commandObject = new CommandObject(commandName, description);
-        commandObjects.add(commandObject);
+        commandRegistry.add(commandObject);
         return commandObject;
     }
 
-    private void processCommand(String line) throws Exception {
-        if (line == null || line.isEmpty()) {
-            return;
+    /**
+     * Sets the writer the shell output is written to, by default it's written to {@link System#out}. The output
+     * is buffered and written out before the prompt is shown, once the buffered text exceeds the flush threshold
+     * (see {@link #setOutputFlushThreshold(int)}) and at the end of a batch.
+     *
+     * @param writer the writer, or null to write to System.out
+     */
+    public void setOutput(Writer writer) {
+        output.setWriter(writer);
+    }
+
+    /**
+     * Sets the number of buffered characters after which the shell output is written out without waiting for the
+     * next prompt. The default is 8192, 0 writes out every line.
+     *
+     * @param flushThreshold the number of characters
+     */
+    public void setOutputFlushThreshold(int flushThreshold) {
+        output.setFlushThreshold(flushThreshold);
+    }
+
+    /**
+     * Sets the width of the help and of the text tables created by the shell, 90 by default.
+     *
+     * @param terminalWidth the width in characters
+     */
+    public void setTerminalWidth(int terminalWidth) {
+        if (terminalWidth < 1) {
+            throw new IllegalArgumentException("Terminal width must be positive: " + terminalWidth);
+        }
+        if (this.terminalWidth != terminalWidth) {
+            this.terminalWidth = terminalWidth;
+            invalidateHelp();
         }
+    }
 
-        CmdLineParser parser = new CmdLineParser(line, commandObjects);
-        parser.parse();
-        List<String> errors = parser.getErrors();
-        CommandObject commandObject = parser.getParsedCommandObject();
+    /**
+     * In compact mode, a command line with errors prints only the errors and a hint to the help command instead of
+     * the help of the command.
+     *
+     * @param compactErrors whether to print the errors without help
+     */
+    public void setCompactErrors(boolean compactErrors) {
+        this.compactErrors = compactErrors;
+    }
 
-        if (errors.size() > 0) {
-            printErrors(commandObject, errors);
-            return;
+    /**
+     * Writes the shell output on a dedicated thread, so the commands, including the ones printing through the
+     * {@link ConsoleWriter}, and the prompt don't wait for a slow terminal. The flushed output is queued in a
+     * bounded queue, the provided policy decides what happens if the queue is full. The output is still written
+     * in order, and it's completely written before the batch mode returns or the shell exits.
+     *
+     * @param capacity the maximum number of queued flushes, 0 writes the output synchronously again
+     * @param policy   what to do if the queue is full
+     */
+    public void setAsyncOutput(int capacity, OutputOverflowPolicy policy) {
+        output.setAsync(capacity, policy);
+    }
 
-        } else {
-            Map<String, String> options = parser.getOptionsMap();
-            List<String> arguments = parser.getArgumentValues();
-            List<Character> optionFlags = parser.getOptionFlagValues();
-            List<ArgumentObject> mandatoryArgumentObjects = commandObject.getMandatoryArguments();
-            List<String> mandatoryArgNames = mandatoryArgumentObjects.stream().map(arg -> arg.getName()).collect(Collectors.toList());
-            if (mandatoryArgumentObjects.size() > arguments.size()/*0 && !arguments.stream().allMatch(arg -> mandatoryArgNames.contains(arg))*/) {
-                printLine("Error: All mandatory arguments must be provided : " + mandatoryArgNames);
-                printHelp(false, commandObject.getName());
-                return;
-            }
-
-            List<OptionObject> mandatoryOpts = commandObject.getMandatoryOptions();
-            List<String> mandatoryOptNames = mandatoryOpts.stream().map(opt -> opt.getName()).collect(Collectors.toList());
-            Set<String> optionKeys = options.keySet();
-            if (mandatoryOpts.size() > 0 && !mandatoryOptNames.stream().allMatch(opt -> optionKeys.contains(opt))) {
-                printLine("Error: All mandatory options must be provided : " + mandatoryOptNames);
-                printHelp(false, commandObject.getName());
-                return;
-            }
-
-            if (options.size() > mandatoryOpts.size()) {
-                List<String> allOptionNames = commandObject.getOptionObjects().stream().map(opt -> opt.getName()).collect(Collectors.toList());
-                List<String> undefinedOptions = options.keySet().stream().filter(opt -> !allOptionNames.contains(opt)).collect(Collectors.toList());
-                if (undefinedOptions.size() > 0) {
-                    printLine("Error: Options not recognized : " + undefinedOptions);
-                    printHelp(false, commandObject.getName());
-                    return;
-                }
+    /**
+     * @return the number of flushes waiting to be written by the asynchronous output, see
+     * {@link #setAsyncOutput(int, OutputOverflowPolicy)}
+     */
+    public int getOutputQueueDepth() {
+        return output.getQueueDepth();
+    }
+
+    /**
+     * @return the number of output lines dropped with {@link OutputOverflowPolicy#DROP}
+     */
+    public long getDroppedOutputLines() {
+        return output.getDroppedLines();
+    }
+
+    /**
+     * @return false if the command couldn't be executed because of errors in the command line
+     */
+    private boolean processCommand(String line) throws Exception {
+        try {
+            return runCommandLine(line);
+        } finally {
+            //a batch is written out at the end
+            if (interactive) {
+                output.flush();
             }
+        }
+    }
 
-            if (!commandObject.getOptionObjects().stream().allMatch(opt -> {
-                String s = options.get(opt.getName());
-                if (s != null && opt.getValidValues() != null && opt.getValidValues().size() > 0 && !opt.getValidValues().contains(s)) {
-                    printLine("Error: Option value should be one of : " + opt.getValidValues() + ". Found : " + s);
-                    printHelp(false, commandObject.getName());
-                    return false;
-                } else if (s == null && opt.getValidValues() != null && opt.getValidValues().size() > 0) {
-                    options.put(opt.getName(), opt.getValidValues().get(0));
-                }
+    private boolean runCommandLine(String line) throws Exception {
+        if (line == null || line.isEmpty()) {
+            return true;
+        }
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        boolean background = end > 0 && line.charAt(end - 1) == '&';
+        if (background) {
+            line = line.substring(0, end - 1);
+            if (line.trim().isEmpty()) {
                 return true;
-            })) {
-                return;
             }
+        }
 
+        List<String> stages = CmdLineTokenizer.splitPipeline(line);
+        if (stages.size() > 1) {
+            return processPipeline(line, stages, background);
+        }
+        Callable<Object> command = prepareCommand(line, null);
+        if (command == null) {
+            return false;
+        }
+        execute(line, background, command);
+        return true;
+    }
 
-            if (optionFlags.size() > 0) {
-                List<Character> allFlags = commandObject.getOptionFlagObjects().stream().map(flg -> flg.getFlgName()).collect(Collectors.toList());
-                List<Character> undefinedFlags = optionFlags.stream().filter(f -> !allFlags.contains(f)).collect(Collectors.toList());
-                if (undefinedFlags.size() > 0) {
-                    printLine("Error: Option Flags not recognized: " + undefinedFlags);
-                    printHelp(false, commandObject.getName());
-                    return;
-                }
-
-            }
+    /**
+     * Parses, validates and binds the command line.
+     *
+     * @param line  the command line
+     * @param input the output of the previous command in a pipeline, null if the command is not piped
+     * @return the command invocation, or null if the command line has errors, which have been printed
+     */
+    private Callable<Object> prepareCommand(String line, Pipe input) {
+        CmdLineParser parser = new CmdLineParser(line, commandRegistry);
+        parser.parse();
+        List<String> errors = parser.getErrors();
+        CommandObject commandObject = parser.getParsedCommandObject();
 
-            final List<String> allArgumentNames = new ArrayList<>(mandatoryArgNames);
+        if (errors.size() > 0) {
+            printErrors(commandObject, errors);
+            return null;
 
-            commandObject.getArgumentObjects().stream().forEach(a -> {
-                if (!a.isMandatory()) {
-                    allArgumentNames.add(a.getName());
+        } else {
+            String error = parser.validate();
+            if (error != null) {
+                printLine(error);
+                if (interactive) {
+                    if (compactErrors) {
+                        printHelpHint(commandObject);
+                    } else {
+                        printHelp(false, commandObject.getName());
+                    }
                 }
-            });
-
-            if (arguments.size() > allArgumentNames.size()) {
-
-                printLine("Error: Extra arguments entered. Found : " + arguments.size() + ", Expecting : " + allArgumentNames.size());
-                printHelp(false, commandObject.getName());
-                return;
+                return null;
             }
 
-
-            Map<String, String> finalInputMap = new HashMap<>(options);
-            IntStream.range(0, arguments.size()).forEach(index ->
-                    {
-                        if (index < allArgumentNames.size()) {
-                            finalInputMap.put(allArgumentNames.get(index), arguments.get(index));
-                        }
+            CommandMethodInfo info = commandObject.getCommandMethodInfo();
+            if (info != null) {
+                CommandPlan plan = parser.getPlan();
+                String[] values = parser.getValues();
+                ValueConverter[] converters = info.getConverters();
+                int inputIndex = info.getInputParameterIndex();
+                Object[] args = new Object[inputIndex == -1 ? converters.length : converters.length + 1];
+                if (inputIndex != -1) {
+                    args[inputIndex] = (input != null ? input : Pipe.empty()).asInput(info.getInputType());
+                }
+                for (int p = 0; p < converters.length; p++) {
+                    int a = inputIndex != -1 && p >= inputIndex ? p + 1 : p;
+                    char flag = plan.getParameterFlag(p);
+                    if (flag != 0) {
+                        args[a] = parser.isFlagSet(flag);
+                        continue;
                     }
-            );
-
-            finalInputMap.putAll(options);
-
-            optionFlags.forEach(f -> finalInputMap.put(Character.toString(f), "true"));
-
-
-            if (commandObject.getCommandMethodInfo() != null) {
-                List<Object> args = new ArrayList<>();
-                for (Map.Entry<String, Class<?>> entry : commandObject.getCommandMethodInfo().getArgumentFieldTypeMap().entrySet()) {
-                    String s = finalInputMap.get(entry.getKey());
-
-                    try {
-                        Class<?> fieldClass = entry.getValue();
-                        if (fieldClass == String.class) {
-                            args.add(s);
-                        } else if (fieldClass == Float.class || fieldClass == float.class) {
-                            args.add(Float.parseFloat(s));
-                        } else if (fieldClass == BigDecimal.class) {
-                            args.add(new BigDecimal(s));
-                        } else if (fieldClass.equals(Long.class) || fieldClass == long.class) {
-                            args.add(Long.parseLong(s));
-                        } else if (fieldClass == Double.class || fieldClass == double.class) {
-                            args.add(Double.parseDouble(s));
-                        } else if (fieldClass == Short.class || fieldClass == short.class) {
-                            args.add(Short.parseShort(s));
-                        } else if (fieldClass == BigInteger.class) {
-                            args.add(new BigInteger(s));
-                        } else if (fieldClass == Integer.class || fieldClass == int.class) {
-                            args.add(Integer.parseInt(s));
-                        } else if (fieldClass == boolean.class || fieldClass == Boolean.class) {
-                            args.add(Boolean.parseBoolean(s));
-                        } else {
-                            printErrors(commandObject, "Error: Method parameter type is not supported : " + fieldClass.getName() + ", " +
-                                    commandObject.getCommandMethodInfo().getHandlerInstance().getClass() + "#" + commandObject.getCommandMethodInfo().getCommandMethod().getName());
-                            return;
-                        }
-                    } catch (NumberFormatException e) {
-                        errors.add("Error: Not a valid value entered for " + entry.getKey() + " : " + s + "." +
-                                " The value should be compatible with " + entry.getValue().getSimpleName());
+                    String s = values[plan.getParameterSlot(p)];
+                    args[a] = converters[p].convert(s);
+                    if (args[a] == ValueConverter.INVALID) {
+                        errors.add("Error: Not a valid value entered for " + plan.getParameterName(p) + " : " + s + "." +
+                                " The value should be compatible with " + plan.getParameterType(p).getSimpleName());
                     }
                 }
                 if (errors.size() > 0) {
                     printErrors(commandObject, errors);
-                    return;
+                    return null;
                 } else {
-                    CommandMethodInfo info = commandObject.getCommandMethodInfo();
-                    boolean accessible = info.getCommandMethod().isAccessible();
-                    if (!accessible) {
-                        info.getCommandMethod().setAccessible(true);
-                    }
-                    Object output = info.getCommandMethod().invoke(info.getHandlerInstance(), args.toArray());
-                    if (output != null) {
-                        if (output instanceof String) {
-                            printLine(((String) output).replaceAll("\n", LINE_BREAK + PADDING));
-                        }
-                    }
-                    if (info.getCommandMethod().isAccessible() != accessible) {
-                        info.getCommandMethod().setAccessible(accessible);
-                    }
-
+                    return () -> invokeCommand(info, args);
                 }
 
             } else if (commandObject.getCommandFunction() != null) {
 
+                Map<String, String> inputMap = parser.createInputMap();
+                return () -> commandObject.getCommandFunction().apply(inputMap);
+            }
+        }
+        return () -> null;
+    }
 
-                String output = commandObject.getCommandFunction().apply(finalInputMap);
-                if (output != null) {
-                    printLine(output.replaceAll("\n", LINE_BREAK + PADDING));
+    // the shell is bound to the thread running the command, see getWriter()
+    private Object invokeCommand(CommandMethodInfo info, Object[] args) throws Exception {
+        QuickCLIShell previous = COMMAND_SHELL.get();
+        COMMAND_SHELL.set(this);
+        try {
+            return info.getInvoker().invoke(info.getHandlerInstance(), args);
+        } finally {
+            if (previous != null) {
+                COMMAND_SHELL.set(previous);
+            } else {
+                COMMAND_SHELL.remove();
+            }
+        }
+    }
+
+    private boolean processPipeline(String line, List<String> stages, boolean background) throws Exception {
+        Pipe[] pipes = new Pipe[stages.size() - 1];
+        List<Callable<Object>> commands = new ArrayList<>(stages.size());
+        for (int i = 0; i < stages.size(); i++) {
+            if (stages.get(i).isEmpty()) {
+                printErrors(null, "Error: Invalid command. Missing command in the pipeline : " + line.trim());
+                return false;
+            }
+            if (i < pipes.length) {
+                pipes[i] = new Pipe();
+            }
+            Callable<Object> command = prepareCommand(stages.get(i), i == 0 ? null : pipes[i - 1]);
+            if (command == null) {
+                return false;
+            }
+            commands.add(command);
+        }
+        execute(line, background, () -> runPipeline(commands, pipes));
+        return true;
+    }
+
+    /**
+     * Runs all commands of the pipeline concurrently except the last one, which runs on the current thread. The
+     * result of the other commands is written to the next pipe, an asynchronous result once it's completed, any
+     * other object than a String or a sequence of lines as its String representation.
+     *
+     * @return the result of the last command
+     */
+    private Object runPipeline(List<Callable<Object>> commands, Pipe[] pipes) throws Exception {
+        Throwable[] failures = new Throwable[pipes.length];
+        Thread[] threads = new Thread[pipes.length];
+        for (int i = 0; i < pipes.length; i++) {
+            int stage = i;
+            Pipe output = pipes[stage];
+            threads[i] = new Thread(() -> {
+                OutputCapture.start(s -> ResultLines.splitPiped(s, output::write));
+                try {
+                    Object result = commands.get(stage).call();
+                    if (result instanceof CompletionStage) {
+                        result = ((CompletionStage<?>) result).toCompletableFuture().get();
+                    }
+                    if (result instanceof String || ResultLines.isSequence(result)) {
+                        ResultLines.forEachPiped(result, output::write);
+                    } else if (result != null) {
+                        ResultLines.splitPiped(result.toString(), output::write);
+                    }
+                } catch (Throwable t) {
+                    failures[stage] = t;
+                } finally {
+                    OutputCapture.stop();
+                    output.closeWriter();
+                    if (stage > 0) {
+                        pipes[stage - 1].closeReader();
+                    }
                 }
+            }, "quickcli-pipe-" + stage);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        Object result;
+        try {
+            result = commands.get(pipes.length).call();
+            if (ResultLines.isSequence(result)) {
+                //a lazy result may still read from the pipe, so it's consumed before the pipe is closed
+                printLines(result);
+                result = null;
+            }
+        } finally {
+            pipes[pipes.length - 1].closeReader();
+            for (Thread thread : threads) {
+                thread.join();
             }
         }
+        for (Throwable failure : failures) {
+            if (failure != null && !(getCause(failure) instanceof Pipe.BrokenPipeException)) {
+                throw failure instanceof Exception ? (Exception) failure : new RuntimeException(failure);
+            }
+        }
+        return result;
+    }
+
+    private void execute(String line, boolean background, Callable<Object> command) throws Exception {
+        String commandLine = line.trim();
+        if (background) {
+            printLine("[" + jobManager.submit(commandLine, command) + "] " + commandLine);
+            return;
+        }
+        Object output = command.call();
+        if (output instanceof CompletionStage) {
+            printLine("[" + jobManager.add(commandLine, (CompletionStage<?>) output) + "] " + commandLine);
+        } else if (output instanceof String) {
+            printOutput((String) output);
+        } else if (ResultLines.isSequence(output)) {
+            printLines(output);
+        }
     }
 
     /**
@@ -246,9 +400,7 @@ public class QuickCLIShell extends Describable {
      */
     public void start() {
         printLineSeparator();
-        addCommand("help", "prints help").addArgument("command", "The command name")
-                .addCommandHandler(this::printCommandHelp);
-        addCommand("exit", "terminates shell").addCommandHandler(this::exitCLI);
+        addBuiltInCommands();
 
 
         printLine(getName());
@@ -261,8 +413,9 @@ public class QuickCLIShell extends Describable {
         while (true) {
             try {
                 // printBreak();
-                System.out.print(getName() + ">");
+                jobManager.showPrompt(getName() + ">");
                 String line = scanIn.nextLine();
+                jobManager.promptAnswered();
                 processCommand(line);
             } catch (Throwable t) {
                 printLine("Error: " + getCause(t));
@@ -275,7 +428,256 @@ public class QuickCLIShell extends Describable {
 
     }
 
-    private Throwable getCause(Throwable t) {
+    /**
+     * Runs the commands of the provided UTF-8 encoded file, one command per line. See
+     * {@link #runBatch(Reader, boolean)}.
+     *
+     * @param file        the file to read the commands from
+     * @param stopOnError whether to stop at the first failed command
+     * @return the exit code, 0 if all commands succeeded, otherwise 1
+     * @throws IOException if the file couldn't be read
+     */
+    public int runBatch(File file, boolean stopOnError) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return runBatch(reader, stopOnError);
+        }
+    }
+
+    /**
+     * Runs the commands read from the provided reader without any user interaction, one command per line. Blank
+     * lines and lines starting with '#' are skipped. No banner, prompt or help is printed and the output is
+     * buffered. A command fails if its command line has errors or if the command throws an exception, the error
+     * is printed with the line number. The exit command ends the batch, without terminating the JVM. Background
+     * commands are awaited before returning. At the end a summary with the command count, the failure count and
+     * the throughput is printed.
+     *
+     * @param reader      the reader to read the commands from
+     * @param stopOnError whether to stop at the first failed command
+     * @return the exit code, 0 if all commands succeeded, otherwise 1
+     * @throws IOException if the commands couldn't be read
+     */
+    public int runBatch(Reader reader, boolean stopOnError) throws IOException {
+        return runBatch(reader, stopOnError, 1, true);
+    }
+
+    /**
+     * Same as {@link #runBatch(Reader, boolean)}, but runs up to the provided number of commands concurrently, so
+     * the commands of the batch must not depend on each other. The commands run on virtual threads if the JVM
+     * supports them, otherwise on a {@link ForkJoinPool}. The lines a command prints through the
+     * {@link ConsoleWriter} and its result are collected and printed as a whole, either in the order of the input
+     * lines or as soon as the command finishes, with each line prefixed by the input line number. No further
+     * commands are started after an exit command, or after a failure with stopOnError, the running ones are
+     * completed.
+     *
+     * @param reader      the reader to read the commands from
+     * @param stopOnError whether to stop at the first failed command
+     * @param parallelism the maximum number of commands running at the same time
+     * @param ordered     whether to print the output in input order, otherwise it's tagged with the line number
+     * @return the exit code, 0 if all commands succeeded, otherwise 1
+     * @throws IOException if the commands couldn't be read
+     */
+    public int runBatch(Reader reader, boolean stopOnError, int parallelism, boolean ordered) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        addBuiltInCommands();
+        BufferedReader lineReader = reader instanceof BufferedReader ? (BufferedReader) reader :
+                new BufferedReader(reader, BATCH_BUFFER_SIZE);
+        interactive = false;
+        batchExited = false;
+        long startTime = System.nanoTime();
+        int[] counts;
+        try {
+            counts = parallelism == 1 ? runBatch(lineReader, stopOnError) :
+                    runBatch(lineReader, stopOnError, parallelism, ordered);
+            try {
+                jobManager.await(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            jobManager.printFinishedJobs();
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+            printLine("Batch completed: " + counts[0] + " commands, " + counts[1] + " failed, " + elapsedMillis +
+                    " ms, " + (counts[0] * 1000L / Math.max(elapsedMillis, 1)) + " commands/s");
+        } finally {
+            interactive = true;
+            output.awaitWritten();
+        }
+        return counts[1] == 0 ? 0 : 1;
+    }
+
+    /**
+     * @return the command count and the failure count
+     */
+    private int[] runBatch(BufferedReader lineReader, boolean stopOnError) throws IOException {
+        int commandCount = 0;
+        int failureCount = 0;
+        int lineNumber = 0;
+        for (String line; (line = lineReader.readLine()) != null; ) {
+            lineNumber++;
+            String command = line.trim();
+            if (command.isEmpty() || command.charAt(0) == '#') {
+                continue;
+            }
+            commandCount++;
+            if (!runBatchCommand(lineNumber, command)) {
+                failureCount++;
+                if (stopOnError) {
+                    break;
+                }
+            }
+            if (batchExited) {
+                break;
+            }
+        }
+        return new int[]{commandCount, failureCount};
+    }
+
+    private int[] runBatch(BufferedReader lineReader, boolean stopOnError, int parallelism, boolean ordered)
+            throws IOException {
+        ExecutorService executor = newBatchExecutor(parallelism);
+        Semaphore running = new Semaphore(parallelism);
+        //bounds the memory held by the output of the commands finished ahead of the oldest running one
+        int window = parallelism * 16;
+        Deque<Future<BatchResult>> pending = new ArrayDeque<>(window);
+        AtomicInteger failureCount = new AtomicInteger();
+        int commandCount = 0;
+        try {
+            int lineNumber = 0;
+            for (String line; (line = lineReader.readLine()) != null; ) {
+                lineNumber++;
+                String command = line.trim();
+                if (command.isEmpty() || command.charAt(0) == '#') {
+                    continue;
+                }
+                if (ordered && pending.size() == window) {
+                    printBatchResult(pending.poll().get(), true);
+                }
+                if (batchExited || stopOnError && failureCount.get() > 0) {
+                    break;
+                }
+                running.acquire();
+                if (batchExited || stopOnError && failureCount.get() > 0) {
+                    running.release();
+                    break;
+                }
+                commandCount++;
+                int number = lineNumber;
+                Future<BatchResult> future = executor.submit(() -> {
+                    try {
+                        BatchResult result = runCapturedBatchCommand(number, command);
+                        if (!result.success) {
+                            failureCount.incrementAndGet();
+                        }
+                        if (!ordered) {
+                            printBatchResult(result, false);
+                        }
+                        return result;
+                    } finally {
+                        running.release();
+                    }
+                });
+                if (ordered) {
+                    pending.add(future);
+                }
+            }
+            while (!pending.isEmpty()) {
+                printBatchResult(pending.poll().get(), true);
+            }
+            running.acquire(parallelism);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new int[]{commandCount, failureCount.get()};
+    }
+
+    private boolean runBatchCommand(int lineNumber, String command) {
+        boolean success;
+        try {
+            success = processCommand(command);
+        } catch (Throwable t) {
+            printLine("Error: " + getCause(t));
+            success = false;
+        }
+        if (!success) {
+            printLine("Command failed at line " + lineNumber + " : " + command);
+        }
+        return success;
+    }
+
+    private BatchResult runCapturedBatchCommand(int lineNumber, String command) {
+        StringBuilder output = OutputCapture.start();
+        boolean success;
+        try {
+            success = runBatchCommand(lineNumber, command);
+        } finally {
+            OutputCapture.stop();
+        }
+        return new BatchResult(lineNumber, success, output.toString());
+    }
+
+    private void printBatchResult(BatchResult result, boolean ordered) {
+        if (result.output.isEmpty()) {
+            return;
+        }
+        if (ordered) {
+            printOutput(result.output);
+        } else {
+            String tag = "[" + result.lineNumber + "] ";
+            printOutput(tag + result.output.replace("\n", "\n" + tag));
+        }
+    }
+
+    private static ExecutorService newBatchExecutor(int parallelism) {
+        try {
+            //available on Java 21+
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ForkJoinPool(parallelism);
+        }
+    }
+
+    private static final class BatchResult {
+        private final int lineNumber;
+        private final boolean success;
+        private final String output;
+
+        private BatchResult(int lineNumber, boolean success, String output) {
+            this.lineNumber = lineNumber;
+            this.success = success;
+            this.output = output;
+        }
+    }
+
+    private void addBuiltInCommands() {
+        if (builtInCommandsAdded) {
+            return;
+        }
+        builtInCommandsAdded = true;
+        addCommand("help", "prints help").addArgument("command", "The command name")
+                .addCommandHandler(this::printCommandHelp);
+        addCommand("exit", "terminates shell").addCommandHandler(this::exitCLI);
+        //application commands take precedence over the job commands of the same name
+        if (!commandRegistry.contains("jobs")) {
+            addCommand("jobs", "lists the running background commands").addCommandHandler(this::printJobs);
+        }
+        if (!commandRegistry.contains("wait")) {
+            addCommand("wait", "waits for background commands to finish")
+                    .addArgument("job", "The job id, waits for all jobs if not provided")
+                    .addCommandHandler(this::waitForJobs);
+        }
+        if (!commandRegistry.contains("cancel")) {
+            addCommand("cancel", "cancels a background command")
+                    .addArgument("job", "The job id", true, String.class)
+                    .addCommandHandler(this::cancelJob);
+        }
+    }
+
+    private static Throwable getCause(Throwable t) {
         Throwable throwable = t;
         while (throwable.getCause() != null) {
             throwable = throwable.getCause();
@@ -288,6 +690,10 @@ public class QuickCLIShell extends Describable {
     }
 
     private void printErrors(CommandObject commandObject, List<String> errors) {
+        if (!interactive) {
+            errors.forEach(this::printLine);
+            return;
+        }
         TextTable errorTable = createTextTableLayout();
         errorTable.addStringColumn(false, PADDING.length(), true);
 
@@ -295,27 +701,77 @@ public class QuickCLIShell extends Describable {
             errorTable.addRow(s);
         }
         errorTable.printTable();
+        if (compactErrors) {
+            printHelpHint(commandObject);
+            return;
+        }
         if (commandObject == null) {
             printHelp(true, null);
             return;
         }
 
         printLine("Command help: ");
-        TextTable helpTableLayout = createHelpTableLayout();
-        printCommandHelp(commandObject, helpTableLayout);
-        helpTableLayout.printTable();
-        printGeneralHelpMessage();
+        printText(getCommandHelp(commandObject));
+        printText(GENERAL_HELP_MESSAGE);
+    }
+
+    private void printHelpHint(CommandObject commandObject) {
+        printLine("Please use 'help" + (commandObject == null ? "" : " " + commandObject.getName()) +
+                "' command to view details");
     }
 
     private void printLineSeparator() {
-        printLine("---------------------------------------------------------------------------");
+        printLine(LINE_SEPARATOR);
     }
 
     private String exitCLI(Map<String, String> stringStringMap) {
+        if (!interactive) {
+            batchExited = true;
+            return null;
+        }
+        output.awaitWritten();
         System.exit(1);
         return null;
     }
 
+    private String printJobs(Map<String, String> optionMap) {
+        Collection<JobManager.Job> jobs = jobManager.getJobs();
+        if (jobs.isEmpty()) {
+            return "No background commands running";
+        }
+        TextTable jobTable = createTextTableLayout();
+        jobTable.addStringColumn(true, PADDING.length(), false).addStringColumn(true, 2, false)
+                .addStringColumn(false, 2, true);
+        long now = System.currentTimeMillis();
+        for (JobManager.Job job : jobs) {
+            jobTable.addRow("[" + job.getId() + "]", ((now - job.getStartTime()) / 1000) + "s",
+                    job.getCommandLine());
+        }
+        jobTable.printTable();
+        return null;
+    }
+
+    private String waitForJobs(Map<String, String> optionMap) {
+        String job = optionMap.get("job");
+        try {
+            return jobManager.await(job == null ? null : parseJobId(job)) ? null : "No job found : " + job;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while waiting";
+        }
+    }
+
+    private String cancelJob(Map<String, String> optionMap) {
+        String job = optionMap.get("job");
+        return jobManager.cancel(parseJobId(job)) ? null : "No job found : " + job;
+    }
+
+    private static Integer parseJobId(String job) {
+        Object id = NumberParser.parseInt(job.startsWith("[") && job.endsWith("]") ?
+                job.substring(1, job.length() - 1) : job);
+        return id == ValueConverter.INVALID ? -1 : (Integer) id;
+    }
+
     private String printCommandHelp(Map<String, String> optionMap) {
         printHelp(false, optionMap.get("command"));
         return null;
@@ -324,10 +780,7 @@ public class QuickCLIShell extends Describable {
     private void printHelp(boolean brief, String cmd) {
 
         if (brief) {
-            String out = "";
-            out += "Valid Commands: " + (commandObjects.stream().map(c -> c.getName()).collect(Collectors.toList()));
-            printLine(out);
-            printLine("Please use 'help' command to view details");
+            printText(getBriefHelp());
         } else {
             if (cmd != null) {
                 CommandObject commandObject = findCommandByName(cmd);
@@ -336,11 +789,9 @@ public class QuickCLIShell extends Describable {
                     printBreak();
                     printAllHelp();
                 } else {
-                    TextTable helpTableLayout = createHelpTableLayout();
-                    printCommandHelp(commandObject, helpTableLayout);
-                    helpTableLayout.printTable();
-                    printLineSeparator();
-                    printGeneralHelpMessage();
+                    printText(getCommandHelp(commandObject));
+                    printLine(LINE_SEPARATOR);
+                    printText(GENERAL_HELP_MESSAGE);
                 }
             } else {
                 printAllHelp();
@@ -348,108 +799,178 @@ public class QuickCLIShell extends Describable {
         }
     }
 
-    private void printGeneralHelpMessage() {
-        printLine("Please use double quotes for argument and option values if they contain non alphabetical characters");
-        printLine("Option Flags can be combined together e.g. -a -b -c can be combined as -abc");
-        printLine("Options must start with double hyphen e.g. --details=value");
+    private String getBriefHelp() {
+        CachedHelp help = briefHelp;
+        int version = commandRegistry.getVersion();
+        if (help == null || help.registryVersion != version) {
+            StringBuilder sb = new StringBuilder();
+            appendLine(sb, "Valid Commands: " + commandRegistry.getCommands().stream().map(c -> c.getName())
+                    .collect(Collectors.toList()));
+            appendLine(sb, "Please use 'help' command to view details");
+            help = new CachedHelp(version, sb.toString());
+            briefHelp = help;
+        }
+        return help.text;
+    }
+
+    private String getCommandHelp(CommandObject commandObject) {
+        int width = terminalWidth;
+        return commandObject.getRenderedHelp(width, command -> {
+            List<List<Object>> rows = new ArrayList<>();
+            addCommandHelpRows(command, rows);
+            return getHelpLayout(width).render(rows);
+        });
+    }
+
+    private String getAllHelp() {
+        CachedHelp help = allHelp;
+        int version = commandRegistry.getVersion();
+        if (help == null || help.registryVersion != version) {
+            StringBuilder sb = new StringBuilder();
+            appendLine(sb, LINE_SEPARATOR);
+            List<List<Object>> rows = new ArrayList<>();
+            commandRegistry.getCommands().forEach(command -> {
+                addCommandHelpRows(command, rows);
+            });
+            getHelpLayout(terminalWidth).render(rows, sb);
+            appendLine(sb, LINE_SEPARATOR);
+            sb.append(GENERAL_HELP_MESSAGE);
+            help = new CachedHelp(version, sb.toString());
+            allHelp = help;
+        }
+        return help.text;
+    }
+
+    /**
+     * The help is rendered again once the registry version changes. The help of the individual commands is cached
+     * by the command objects for the current width.
+     */
+    private void invalidateHelp() {
+        briefHelp = null;
+        allHelp = null;
     }
 
-    private void printCommandHelp(CommandObject commandObject, TextTable table) {
+    private static final class CachedHelp {
+        private final int registryVersion;
+        private final String text;
 
-        table.addRow(commandObject.getName(), "Description", commandObject.getDescription());
-        table.addRow("", "Usage", getCommandFormat(commandObject));
+        private CachedHelp(int registryVersion, String text) {
+            this.registryVersion = registryVersion;
+            this.text = text;
+        }
+    }
+
+    private static String renderGeneralHelpMessage() {
+        StringBuilder sb = new StringBuilder();
+        appendLine(sb, "Please use double quotes for argument and option values if they contain non alphabetical characters");
+        appendLine(sb, "Option Flags can be combined together e.g. -a -b -c can be combined as -abc");
+        appendLine(sb, "Options must start with double hyphen e.g. --details=value");
+        return sb.toString();
+    }
+
+    private void addCommandHelpRows(CommandObject commandObject, List<List<Object>> rows) {
+
+        addHelpRow(rows, commandObject.getName(), "Description", commandObject.getDescription());
+        addHelpRow(rows, "", "Usage", getCommandFormat(commandObject));
 
         boolean first = true;
 
         for (OptionFlagObject opt : commandObject.getOptionFlagObjects()) {
             if (first) {
-                table.addRow("", "Option Flag" + getHeadingPostfix(commandObject.getOptionFlagObjects()), "");
+                addHelpRow(rows, "", "Option Flag" + getHeadingPostfix(commandObject.getOptionFlagObjects()), "");
             }
 
-            table.addRow("", "-" + opt.getName(), opt.getDescription());
+            addHelpRow(rows, "", "-" + opt.getName(), opt.getDescription());
             first = false;
         }
 
         first = true;
         for (OptionObject opt : commandObject.getOptionObjects()) {
             if (first) {
-                table.addRow("", "Option" + getHeadingPostfix(commandObject.getOptionObjects()), "");
+                addHelpRow(rows, "", "Option" + getHeadingPostfix(commandObject.getOptionObjects()), "");
             }
             boolean m = opt.isMandatory();
-            table.addRow("", "--" + opt.getName(), opt.getDescription() +
+            addHelpRow(rows, "", "--" + opt.getName(), opt.getDescription() +
                     (opt.getValidValues() != null && opt.getValidValues().size() > 0 ? ". Valid values: " +
                             opt.getValidValues() + ". The default value is " + opt.getValidValues().get(0) : "") + (m ? " (Mandatory)" : ""));
             first = false;
         }
 
+        CommandMethodInfo info = commandObject.getCommandMethodInfo();
+        if (info != null && info.getInputParameterIndex() != -1) {
+            addHelpRow(rows, "", "Input:", "Reads the output lines of the previous command in a pipeline " +
+                    "e.g. cmd | " + commandObject.getName());
+        }
+
         first = true;
 
         for (ArgumentObject argumentObject : commandObject.getArgumentObjects()) {
             if (first) {
-                table.addRow("", "Argument" + getHeadingPostfix(commandObject.getArgumentObjects()), "");
+                addHelpRow(rows, "", "Argument" + getHeadingPostfix(commandObject.getArgumentObjects()), "");
             }
             boolean m = argumentObject.isMandatory();
-            table.addRow("", argumentObject.getName(), argumentObject.getDescription() + (m ? "(Mandatory)" : ""));
+            addHelpRow(rows, "", argumentObject.getName(), argumentObject.getDescription() + (m ? "(Mandatory)" : ""));
             first = false;
 
         }
 
 
-        table.addRow("", "", "");
+        addHelpRow(rows, "", "", "");
+    }
+
+    private static void addHelpRow(List<List<Object>> rows, Object... values) {
+        rows.add(Arrays.asList(values));
     }
 
     private String getHeadingPostfix(Collection<?> collection) {
         return (collection.size() == 1 ? "" : "s") + ":";
     }
 
-    private TextTable createHelpTableLayout() {
-        TextTable layout = new TextTable(90);
-        layout.addStringColumn(true, PADDING.length(), false).addStringColumn(true, 2, false).addStringColumn(false, 2, true);
+    private TextTableLayout getHelpLayout(int width) {
+        TextTableLayout layout = helpLayout;
+        if (layout == null || layout.getTerminalWidth() != width) {
+            layout = new TextTable(width).addStringColumn(true, PADDING.length(), false).addStringColumn(true, 2, false)
+                    .addStringColumn(false, 2, true).compileLayout();
+            helpLayout = layout;
+        }
         return layout;
     }
 
     private TextTable createTextTableLayout() {
-        return new TextTable(90);
+        return new TextTable(terminalWidth, new TableOutput());
     }
 
 
     private void printAllHelp() {
-        printLineSeparator();
-        TextTable helpTable = createHelpTableLayout();
-        commandObjects.forEach(command -> {
-            printCommandHelp(command, helpTable);
-        });
-        helpTable.printTable();
-        printLineSeparator();
-        printGeneralHelpMessage();
+        printText(getAllHelp());
     }
 
     private String getCommandFormat(CommandObject commandObject) {
-        String format = commandObject.getName() + "";
+        StringBuilder format = new StringBuilder(commandObject.getName());
 
         for (OptionFlagObject optionFlagObject : commandObject.getOptionFlagObjects()) {
-            format += " [-" + optionFlagObject.getName() + "]";
+            format.append(" [-").append(optionFlagObject.getName()).append(']');
         }
 
         for (OptionObject optionObject : commandObject.getOptionObjects()) {
             boolean m = optionObject.isMandatory();
-            format += " " + (!m ? "[" : "") + "--" + optionObject.getName() + "=<" +
-                    optionObject.getName().toLowerCase() + "_value>" + (!m ? "]" : "");
+            format.append(' ').append(!m ? "[" : "").append("--").append(optionObject.getName()).append("=<")
+                    .append(optionObject.getName().toLowerCase()).append("_value>").append(!m ? "]" : "");
         }
 
         for (ArgumentObject argumentObject : commandObject.getArgumentObjects()) {
             if (argumentObject.isMandatory()) {
-                format += " <" + argumentObject.getName() + ">";
+                format.append(" <").append(argumentObject.getName()).append('>');
             }
         }
 
         for (ArgumentObject argumentObject : commandObject.getArgumentObjects()) {
             if (!argumentObject.isMandatory()) {
-                format += " [<" + argumentObject.getName() + ">]";
+                format.append(" [<").append(argumentObject.getName()).append(">]");
             }
         }
 
-        return format;
+        return format.toString();
     }
 
     private OptionObject findOptionByName(CommandObject commandObject, String opt, List<String> errors) {
@@ -464,23 +985,114 @@ public class QuickCLIShell extends Describable {
     }
 
     private CommandObject findCommandByName(String cmd) {
-        Optional<CommandObject> found = commandObjects.stream().filter(command -> command.getName().
-                equalsIgnoreCase(cmd)).findFirst();
-        if (found.isPresent()) {
-            return found.get();
+        return commandRegistry.find(cmd);
+    }
+
+
+    private void printLine(String s) {
+        if (!OutputCapture.print(s)) {
+            output.printLine(PADDING + s);
         }
-        return null;
     }
 
+    private void printOutput(String output) {
+        if (output.indexOf('\n') == -1) {
+            printLine(output);
+            return;
+        }
+        StringBuilder sb = new StringBuilder(output.length() + 32);
+        ResultLines.split(output, line -> {
+            if (sb.length() > 0) {
+                sb.append(LINE_BREAK).append(PADDING);
+            }
+            sb.append(line);
+        });
+        printLine(sb.toString());
+    }
 
-    private static void printLine(String s) {
-        System.out.println(PADDING + s);
+    /**
+     * Prints the lines of a sequence result while they are produced. The output is written out once the flush
+     * threshold is reached or some time has passed since the last flush, the first line is written out right away.
+     */
+    private void printLines(Object result) throws Exception {
+        if (OutputCapture.isActive()) {
+            ResultLines.forEach(result, this::printLine);
+            return;
+        }
+        long[] lastFlush = {0};
+        try {
+            ResultLines.forEach(result, line -> {
+                output.printLine(PADDING + line);
+                long now = System.nanoTime();
+                if (now - lastFlush[0] >= LINES_FLUSH_INTERVAL) {
+                    output.flush();
+                    lastFlush[0] = now;
+                }
+            });
+        } finally {
+            output.flush();
+        }
     }
 
-    private static void printBreak() {
+    private void printBreak() {
         printLine(LINE_BREAK);
     }
 
+    /**
+     * Prints pre-rendered lines, each one terminated by a line break.
+     */
+    private void printText(String text) {
+        if (!OutputCapture.isActive()) {
+            output.print(text);
+            return;
+        }
+        int start = 0;
+        for (int end; (end = text.indexOf('\n', start)) != -1; start = end + 1) {
+            OutputCapture.print(text.substring(start, end > start && text.charAt(end - 1) == '\r' ? end - 1 : end));
+        }
+    }
+
+    private static void appendLine(StringBuilder sb, String line) {
+        sb.append(PADDING).append(line).append(LINE_BREAK);
+    }
+
+    /**
+     * Receives the lines of a text table and prints them like {@link #printLine(String)}, without the padding.
+     */
+    private class TableOutput implements Appendable {
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                if (!OutputCapture.print(line.toString())) {
+                    output.printLine(line);
+                }
+                line.setLength(0);
+            } else {
+                line.append(c);
+            }
+            return this;
+        }
+    }
+
 
     /**
      * Scans the classes for commands and does the necessary initializing for the shell application.
@@ -489,58 +1101,67 @@ public class QuickCLIShell extends Describable {
      */
     public void scanCommands(Class<?>... classesToBeScanned) {
         for (Class<?> aClass : classesToBeScanned) {
-            Object handlerInstance;
-            try {
-                handlerInstance = aClass.newInstance();
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            GeneratedCommands generatedCommands = findGeneratedCommands(aClass);
+            if (generatedCommands != null) {
+                registerGeneratedCommands(generatedCommands);
+                continue;
             }
+
+            LazyHandler handler = new LazyHandler(aClass::newInstance);
             for (Method method : aClass.getDeclaredMethods()) {
                 if (method.isAnnotationPresent(Command.class)) {
-                    if (method.getReturnType() != void.class && method.getReturnType() != String.class) {
-                        throw new IllegalArgumentException("The command method return type should be either String or void " + aClass.getName() + "#" + method.getName());
+                    String methodName = aClass.getName() + "#" + method.getName();
+                    if (!isSupportedReturnType(method.getReturnType(), method.getGenericReturnType())) {
+                        throw new IllegalArgumentException("The command method return type should be either String, " +
+                                "CompletableFuture<String>, Stream<String>, Iterator<String>, Iterable or void " +
+                                methodName);
                     }
                     Map<String, Class<?>> argFieldTypeMap = new LinkedHashMap<>();
 
 
                     Command cmd = method.getAnnotation(Command.class);
                     CommandObject commandObject = addCommand(cmd.name(), cmd.desc());
-                    for (Parameter parameter : method.getParameters()) {
+                    int inputParameterIndex = -1;
+                    Class<?> inputType = null;
+                    Parameter[] parameters = method.getParameters();
+                    for (int i = 0; i < parameters.length; i++) {
+                        Parameter parameter = parameters[i];
                         Option option = parameter.getAnnotation(Option.class);
                         if (option != null) {
-                            checkParameterType(option.name(), method, parameter.getType());
-                            commandObject.addOption(option.name(), option.desc(), option.mandatory(), parameter.getType(), option.valuesAllowed());
-                            if (argFieldTypeMap.containsKey(option.name())) {
-                                throw new IllegalArgumentException("Option defined more than once :" + option.name() + ", method: " + aClass.getName() + "#" + method.getName());
-                            }
-                            argFieldTypeMap.put(option.name(), parameter.getType());
+                            checkParameterType(option.name(), method.toString(), parameter.getType());
+                            addOptionParameter(commandObject, argFieldTypeMap, methodName, option.name(), option.desc(),
+                                    option.mandatory(), parameter.getType(), option.valuesAllowed());
                         }
                         OptionFlag optionFlag = parameter.getAnnotation(OptionFlag.class);
                         if (optionFlag != null) {
-                            if (parameter.getType() != boolean.class && parameter.getType() != Boolean.class) {
-                                throw new IllegalArgumentException("Parameter annotated with OptionFlg must be of boolean type : " + optionFlag.name() +
-                                        ", type found : " + parameter.getType() + ", method: " + aClass.getName() + "#" + method.getName());
-                            }
-                            try {
-                                commandObject.addOptionFlag(optionFlag.name(), optionFlag.desc());
-                            } catch (Throwable e) {
-                                throw new IllegalArgumentException("Option flag name is not valid : " + optionFlag.name() + ", method: " + aClass.getName() + "#" + method.getName(), e);
-                            }
-                            if (argFieldTypeMap.containsKey(optionFlag.name() + "")) {
-                                throw new IllegalArgumentException("Option flag defined more than once :" + optionFlag.name() + ", method: " + aClass.getName() + "#" + method.getName());
-                            }
-                            argFieldTypeMap.put(optionFlag.name() + "", parameter.getType());
+                            addOptionFlagParameter(commandObject, argFieldTypeMap, methodName, optionFlag.name(),
+                                    optionFlag.desc(), parameter.getType());
                         }
                         Argument argument = parameter.getAnnotation(Argument.class);
                         if (argument != null) {
-                            checkParameterType(argument.name(), method, parameter.getType());
-                            commandObject.addArgument(argument.name(), argument.desc(), argument.mandatory(), parameter.getType());
-                            argFieldTypeMap.put(argument.name(), parameter.getType());
+                            checkParameterType(argument.name(), method.toString(), parameter.getType());
+                            addArgumentParameter(commandObject, argFieldTypeMap, argument.name(), argument.desc(),
+                                    argument.mandatory(), parameter.getType());
+                        }
+                        if (parameter.isAnnotationPresent(Input.class)) {
+                            if (inputParameterIndex != -1) {
+                                throw new IllegalArgumentException("Input defined more than once, method: " + methodName);
+                            }
+                            if (!isStringSequence(parameter.getParameterizedType())) {
+                                throw new IllegalArgumentException("Parameter annotated with Input must be of type " +
+                                        "Stream<String> or Iterable<String>, type found : " +
+                                        parameter.getParameterizedType() + ", method: " + methodName);
+                            }
+                            inputParameterIndex = i;
+                            inputType = parameter.getType();
                         }
                     }
 
 
-                    commandObject.setCommandMethodInfo(new CommandMethodInfo(method, handlerInstance, argFieldTypeMap));
+                    commandObject.setCommandMethodInfo(new CommandMethodInfo(method, handler, argFieldTypeMap,
+                            inputParameterIndex, inputType));
+                    //compiling upfront so that the definition errors are reported during scanning
+                    commandObject.getPlan();
                 }
             }
 
@@ -548,12 +1169,238 @@ public class QuickCLIShell extends Describable {
 
     }
 
+    private static boolean isSupportedReturnType(Class<?> type, Type genericType) {
+        return type == void.class || type == String.class || Iterable.class.isAssignableFrom(type) ||
+                isOfString(genericType, CompletableFuture.class) || isOfString(genericType, Stream.class) ||
+                isOfString(genericType, Iterator.class);
+    }
+
+    private static boolean isStringSequence(Type type) {
+        return isOfString(type, Stream.class) || isOfString(type, Iterable.class);
+    }
+
+    /**
+     * @return true if the type is the provided generic type with String as type argument e.g. Stream&lt;String&gt;
+     */
+    private static boolean isOfString(Type type, Class<?> rawType) {
+        return type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == rawType &&
+                ((ParameterizedType) type).getActualTypeArguments()[0] == String.class;
+    }
+
+    private static void addOptionParameter(CommandObject commandObject, Map<String, Class<?>> argFieldTypeMap,
+                                           String methodName, String name, String desc, boolean mandatory,
+                                           Class<?> type, String[] valuesAllowed) {
+        commandObject.addOption(name, desc, mandatory, type, valuesAllowed);
+        if (argFieldTypeMap.containsKey(name)) {
+            throw new IllegalArgumentException("Option defined more than once :" + name + ", method: " + methodName);
+        }
+        argFieldTypeMap.put(name, type);
+    }
+
+    private static void addOptionFlagParameter(CommandObject commandObject, Map<String, Class<?>> argFieldTypeMap,
+                                               String methodName, char name, String desc, Class<?> type) {
+        if (type != boolean.class && type != Boolean.class) {
+            throw new IllegalArgumentException("Parameter annotated with OptionFlg must be of boolean type : " + name +
+                    ", type found : " + type + ", method: " + methodName);
+        }
+        try {
+            commandObject.addOptionFlag(name, desc);
+        } catch (Throwable e) {
+            throw new IllegalArgumentException("Option flag name is not valid : " + name + ", method: " + methodName, e);
+        }
+        if (argFieldTypeMap.containsKey(name + "")) {
+            throw new IllegalArgumentException("Option flag defined more than once :" + name + ", method: " + methodName);
+        }
+        argFieldTypeMap.put(name + "", type);
+    }
+
+    private static void addArgumentParameter(CommandObject commandObject, Map<String, Class<?>> argFieldTypeMap,
+                                             String name, String desc, boolean mandatory, Class<?> type) {
+        commandObject.addArgument(name, desc, mandatory, type);
+        argFieldTypeMap.put(name, type);
+    }
+
+    /**
+     * Registers the commands of the provided handler classes by their names. If a handler class has a compile time
+     * generated registry (see {@link GeneratedCommands}), the handler class itself is neither loaded nor
+     * instantiated until one of its commands is invoked, the help is printed from the registered command
+     * definitions. Otherwise the handler class is loaded and scanned the same way as
+     * {@link #scanCommands(Class[])}.
+     *
+     * @param handlerClassNames the binary names of the command handler classes
+     */
+    public void registerCommandGroups(String... handlerClassNames) {
+        registerCommandGroups(null, handlerClassNames);
+    }
+
+    /**
+     * Same as {@link #registerCommandGroups(String...)}, but the metadata of the handler classes which have to be
+     * scanned at runtime is kept in the provided snapshot file. On the next start, the commands of a handler class
+     * are registered from the snapshot without loading the class, unless its class file has changed since the
+     * snapshot was written. Stale or missing entries are scanned again and the snapshot file is rewritten.
+     * Several calls can share a snapshot file, the entries of the handler classes of other calls are kept unless
+     * their class file can't be found anymore. The snapshot is only a cache, failing to write it is not reported.
+     *
+     * @param snapshotFile      the snapshot file, created if it doesn't exist
+     * @param handlerClassNames the binary names of the command handler classes
+     */
+    public void registerCommandGroups(File snapshotFile, String... handlerClassNames) {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = QuickCLIShell.class.getClassLoader();
+        }
+        CommandSnapshot snapshot = snapshotFile != null ? CommandSnapshot.read(snapshotFile) : null;
+        //the handler classes of this call which have no snapshot entry
+        Set<String> unsnapshottedClassNames = new HashSet<>();
+        boolean modified = false;
+        for (String handlerClassName : handlerClassNames) {
+            GeneratedCommands generatedCommands = findGeneratedCommands(handlerClassName, classLoader);
+            if (generatedCommands != null) {
+                registerGeneratedCommands(generatedCommands);
+                unsnapshottedClassNames.add(handlerClassName);
+                continue;
+            }
+            long stamp = snapshot != null ? CommandSnapshot.stamp(handlerClassName, classLoader) : -1;
+            if (stamp != -1 && snapshot.isUpToDate(handlerClassName, stamp)) {
+                String className = handlerClassName;
+                ClassLoader loader = classLoader;
+                snapshot.registerCommands(handlerClassName, classLoader, new GeneratedCommandsRegistrar(
+                        new LazyHandler(() -> Class.forName(className, true, loader).newInstance())));
+                continue;
+            }
+            int firstCommand = commandRegistry.size();
+            try {
+                scanCommands(Class.forName(handlerClassName, false, classLoader));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Command handler class not found: " + handlerClassName, e);
+            }
+            if (stamp != -1) {
+                snapshot.put(handlerClassName, stamp, commandRegistry.getCommands().stream()
+                        .skip(firstCommand).collect(Collectors.toList()));
+                modified = true;
+            } else {
+                unsnapshottedClassNames.add(handlerClassName);
+            }
+        }
+        if (snapshot != null && (snapshot.removeStale(unsnapshottedClassNames, classLoader) || modified)) {
+            try {
+                snapshot.write(snapshotFile);
+            } catch (IOException e) {
+                //ignoring, the handler classes will be scanned again on the next start
+            }
+        }
+    }
+
+    private void registerGeneratedCommands(GeneratedCommands generatedCommands) {
+        generatedCommands.registerCommands(new GeneratedCommandsRegistrar(new LazyHandler(generatedCommands::newHandler)));
+    }
+
+    private static GeneratedCommands findGeneratedCommands(Class<?> handlerClass) {
+        GeneratedCommands generatedCommands = findGeneratedCommands(handlerClass.getName(),
+                handlerClass.getClassLoader());
+        return generatedCommands != null && generatedCommands.getHandlerClass() == handlerClass ?
+                generatedCommands : null;
+    }
+
+    private static GeneratedCommands findGeneratedCommands(String handlerClassName, ClassLoader classLoader) {
+        Class<?> generatedClass;
+        try {
+            generatedClass = Class.forName(GeneratedCommands.getGeneratedClassName(handlerClassName), true,
+                    classLoader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        if (!GeneratedCommands.class.isAssignableFrom(generatedClass)) {
+            return null;
+        }
+        try {
+            return (GeneratedCommands) generatedClass.newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Registers the commands defined by the compile time generated code, with the same validations as the runtime
+     * scanning.
+     */
+    private class GeneratedCommandsRegistrar implements GeneratedCommands.Registrar {
+        private final LazyHandler handler;
+
+        private GeneratedCommandsRegistrar(LazyHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public GeneratedCommands.CommandDefinition command(String name, String desc, String methodName,
+                                                           GeneratedCommands.Dispatcher dispatcher) {
+            CommandObject commandObject = addCommand(name, desc);
+            Map<String, Class<?>> argFieldTypeMap = new LinkedHashMap<>();
+
+            return new GeneratedCommands.CommandDefinition() {
+                private int inputParameterIndex = -1;
+                private Class<?> inputType;
+
+                @Override
+                public GeneratedCommands.CommandDefinition option(String name, String desc, boolean mandatory,
+                                                                  Class<?> type, String... valuesAllowed) {
+                    checkParameterType(name, methodName, type);
+                    addOptionParameter(commandObject, argFieldTypeMap, methodName, name, desc, mandatory, type,
+                            valuesAllowed);
+                    return this;
+                }
+
+                @Override
+                public GeneratedCommands.CommandDefinition optionFlag(char name, String desc, Class<?> type) {
+                    addOptionFlagParameter(commandObject, argFieldTypeMap, methodName, name, desc, type);
+                    return this;
+                }
+
+                @Override
+                public GeneratedCommands.CommandDefinition argument(String name, String desc, boolean mandatory,
+                                                                    Class<?> type) {
+                    checkParameterType(name, methodName, type);
+                    addArgumentParameter(commandObject, argFieldTypeMap, name, desc, mandatory, type);
+                    return this;
+                }
+
+                @Override
+                public GeneratedCommands.CommandDefinition input(Class<?> type) {
+                    if (inputParameterIndex != -1) {
+                        throw new IllegalArgumentException("Input defined more than once, method: " + methodName);
+                    }
+                    if (type != Stream.class && type != Iterable.class) {
+                        throw new IllegalArgumentException("Parameter annotated with Input must be of type " +
+                                "Stream<String> or Iterable<String>, type found : " + type + ", method: " + methodName);
+                    }
+                    inputParameterIndex = argFieldTypeMap.size();
+                    inputType = type;
+                    return this;
+                }
+
+                @Override
+                public void register() {
+                    CommandInvoker invoker = (handler, args) -> {
+                        try {
+                            return dispatcher.dispatch(handler, args);
+                        } catch (Throwable t) {
+                            throw new InvocationTargetException(t);
+                        }
+                    };
+                    commandObject.setCommandMethodInfo(new CommandMethodInfo(methodName, invoker, handler,
+                            argFieldTypeMap, inputParameterIndex, inputType));
+                    commandObject.getPlan();
+                }
+            };
+        }
+    }
+
     private static final List<Class<? extends Number>> SUPPORTED_NUMBER_TYPES =
             Arrays.asList(Float.class, BigDecimal.class, Long.class, Double.class,
                     Short.class, BigInteger.class, Byte.class, Integer.class, float.class,
                     long.class, double.class, short.class, byte.class, int.class);
 
-    private void checkParameterType(String fieldName, Method method, Class<?> type) {
+    private static void checkParameterType(String fieldName, String method, Class<?> type) {
         if (type != String.class && SUPPORTED_NUMBER_TYPES.stream().noneMatch(n -> n == type)) {
             throw new IllegalArgumentException(
                     "Option/Argument type must be either String or any sub type of following Number type: " +
@@ -610,11 +1457,17 @@ public class QuickCLIShell extends Describable {
     }
 
     /**
-     * Resturn the instance of ConsoleWriter.
+     * Resturn the instance of ConsoleWriter. Called from a command method, it's the writer of the shell running the
+     * command, so the shells of the same JVM don't write to each other's output. Anywhere else it's the writer of
+     * the last created shell.
      *
      * @return Console Writer
      */
     public static ConsoleWriter getWriter() {
-        return consoleWriter;
+        QuickCLIShell shell = COMMAND_SHELL.get();
+        if (shell == null) {
+            shell = lastCreatedShell;
+        }
+        return shell != null ? shell.consoleWriter : null;
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Splits a command result into output lines. Besides String, a command can return a <code>Stream&lt;String&gt;</code>,
+ * an <code>Iterator&lt;String&gt;</code> or an <code>Iterable</code>, whose elements are consumed one by one while
+ * they are produced, so the whole result never has to be in memory.
+ *
+ * @author Joe Khan.
+ */
+final class ResultLines {
+
+    private ResultLines() {
+    }
+
+    /**
+     * @param result the command result
+     * @return true if the result is a sequence of lines rather than a single String
+     */
+    static boolean isSequence(Object result) {
+        return result instanceof Stream || result instanceof Iterator || result instanceof Iterable;
+    }
+
+    /**
+     * Passes each line of the result to the provided action. Elements containing line breaks are split into
+     * multiple lines, other elements than String are converted with {@link String#valueOf(Object)}. A Stream, or an
+     * Iterator/Iterable implementing {@link AutoCloseable}, is closed afterwards.
+     *
+     * @param result the command result, either a String or a sequence
+     * @param action receives the lines
+     */
+    static void forEach(Object result, Consumer<String> action) throws Exception {
+        forEach(result, false, action);
+    }
+
+    /**
+     * Same as {@link #forEach(Object, Consumer)}, but the lines are split as {@link #splitPiped(String, Consumer)}
+     * splits them.
+     */
+    static void forEachPiped(Object result, Consumer<String> action) throws Exception {
+        forEach(result, true, action);
+    }
+
+    private static void forEach(Object result, boolean piped, Consumer<String> action) throws Exception {
+        if (result instanceof String) {
+            split((String) result, piped, action);
+            return;
+        }
+        Iterator<?> iterator;
+        if (result instanceof Stream) {
+            iterator = ((Stream<?>) result).iterator();
+        } else if (result instanceof Iterator) {
+            iterator = (Iterator<?>) result;
+        } else {
+            iterator = ((Iterable<?>) result).iterator();
+        }
+        try {
+            while (iterator.hasNext()) {
+                split(String.valueOf(iterator.next()), piped, action);
+            }
+        } finally {
+            if (result instanceof AutoCloseable) {
+                ((AutoCloseable) result).close();
+            } else if (iterator instanceof AutoCloseable) {
+                ((AutoCloseable) iterator).close();
+            }
+        }
+    }
+
+    /**
+     * Passes each line of the provided String to the action.
+     */
+    static void split(String lines, Consumer<String> action) {
+        split(lines, false, action);
+    }
+
+    /**
+     * Passes each line of the provided String to the action the way the next command of a pipeline reads them. A
+     * line break at the end doesn't start another line and the carriage return of a CRLF line break is removed.
+     */
+    static void splitPiped(String lines, Consumer<String> action) {
+        split(lines, true, action);
+    }
+
+    private static void split(String lines, boolean piped, Consumer<String> action) {
+        int start = 0;
+        for (int end; (end = lines.indexOf('\n', start)) != -1; start = end + 1) {
+            int lineEnd = piped && end > start && lines.charAt(end - 1) == '\r' ? end - 1 : end;
+            action.accept(lines.substring(start, lineEnd));
+        }
+        if (!piped || start == 0 || start < lines.length()) {
+            action.accept(start == 0 ? lines : lines.substring(start));
+        }
+    }
+}
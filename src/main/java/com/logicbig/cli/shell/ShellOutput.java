@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * The buffered output of a shell. All lines printed by the shell, including the text tables, are collected here
+ * and written out in one go when the shell is about to prompt for input, or once the buffered text exceeds the
+ * flush threshold. Lines printed by a command whose output is captured (see {@link OutputCapture}) don't reach
+ * this buffer. Anything a command writes to System.out directly bypasses the buffer and may appear before the
+ * lines buffered ahead of it.
+ * <p>
+ * The target is {@link System#out} unless a {@link Writer} is provided. System.out is looked up on every flush,
+ * so it can still be replaced after the shell has been created. If asynchronous output is enabled, a flush only
+ * queues the text and the target is written by a separate thread. The flushes are ordered by a lock of their own,
+ * so a flush waiting for the queue doesn't hold up the threads printing into the buffer.
+ *
+ * @author Joe Khan.
+ */
+final class ShellOutput {
+    static final int DEFAULT_FLUSH_THRESHOLD = 1 << 13;
+    private static final String LINE_BREAK = System.getProperty("line.separator");
+
+    private final StringBuilder buffer = new StringBuilder(DEFAULT_FLUSH_THRESHOLD);
+    //taken before the lock of the buffer, never after it
+    private final Object flushLock = new Object();
+    private volatile Writer writer;
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+    private volatile AsyncOutput asyncOutput;
+
+    /**
+     * @param writer the target, or null to write to {@link System#out}
+     */
+    void setWriter(Writer writer) {
+        synchronized (flushLock) {
+            awaitWritten();
+            this.writer = writer;
+        }
+    }
+
+    /**
+     * Writes the flushed output on a separate thread, see {@link AsyncOutput}.
+     *
+     * @param capacity the number of flushes which can be queued, 0 to write synchronously again
+     * @param policy   what to do if the queue is full
+     */
+    void setAsync(int capacity, OutputOverflowPolicy policy) {
+        synchronized (flushLock) {
+            flush();
+            AsyncOutput previous = asyncOutput;
+            asyncOutput = capacity == 0 ? null : new AsyncOutput(capacity, policy, this::write);
+            if (previous != null) {
+                previous.close();
+            }
+        }
+    }
+
+    /**
+     * @param flushThreshold the number of buffered characters which triggers a flush, 0 flushes every line
+     */
+    void setFlushThreshold(int flushThreshold) {
+        if (flushThreshold < 0) {
+            throw new IllegalArgumentException("Flush threshold cannot be negative: " + flushThreshold);
+        }
+        boolean full;
+        synchronized (this) {
+            this.flushThreshold = flushThreshold;
+            full = buffer.length() >= flushThreshold;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Buffers a line, the line break is appended.
+     */
+    void printLine(CharSequence line) {
+        boolean full;
+        synchronized (this) {
+            buffer.append(line).append(LINE_BREAK);
+            full = buffer.length() >= flushThreshold;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Buffers the text as it is, used for the prompt and for pre-rendered lines.
+     */
+    void print(CharSequence text) {
+        boolean full;
+        synchronized (this) {
+            buffer.append(text);
+            full = buffer.length() >= flushThreshold;
+        }
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes out the buffered text. The buffer isn't locked while the asynchronous output waits for space in its
+     * queue (see {@link OutputOverflowPolicy#BLOCK}).
+     */
+    void flush() {
+        synchronized (flushLock) {
+            AsyncOutput async;
+            String chunk;
+            synchronized (this) {
+                if (buffer.length() == 0) {
+                    return;
+                }
+                async = asyncOutput;
+                if (async == null) {
+                    try {
+                        write(buffer);
+                    } finally {
+                        buffer.setLength(0);
+                    }
+                    return;
+                }
+                chunk = buffer.toString();
+                buffer.setLength(0);
+            }
+            async.write(chunk);
+        }
+    }
+
+    /**
+     * Flushes and waits until the output has reached the target.
+     */
+    void awaitWritten() {
+        synchronized (flushLock) {
+            flush();
+            AsyncOutput async = asyncOutput;
+            if (async != null) {
+                async.awaitWritten();
+            }
+        }
+    }
+
+    /**
+     * @return the number of flushes waiting to be written by the asynchronous output, 0 if it's not enabled
+     */
+    int getQueueDepth() {
+        AsyncOutput async = asyncOutput;
+        return async != null ? async.getQueueDepth() : 0;
+    }
+
+    /**
+     * @return the number of lines dropped by the asynchronous output
+     */
+    long getDroppedLines() {
+        AsyncOutput async = asyncOutput;
+        return async != null ? async.getDroppedLines() : 0;
+    }
+
+    private void write(CharSequence text) {
+        Writer target = writer;
+        if (target == null) {
+            System.out.append(text);
+            System.out.flush();
+        } else {
+            try {
+                target.append(text);
+                target.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts the entered String value to the type of a command method parameter. Converters are resolved once per
+ * parameter when commands are scanned.
+ *
+ * @author Joe Khan.
+ */
+@FunctionalInterface
+interface ValueConverter {
+
+    /**
+     * Returned by a converter if the value is not compatible with the target type.
+     */
+    Object INVALID = new Object();
+
+    /**
+     * @param value the entered value, null if nothing was entered
+     * @return the converted value, or {@link #INVALID} if the value is not compatible with the target type
+     */
+    Object convert(String value);
+
+    /**
+     * Returns the converter for the provided parameter type.
+     *
+     * @param type the method parameter type
+     * @return the converter or null if the type is not supported
+     */
+    static ValueConverter forType(Class<?> type) {
+        return Converters.CONVERTERS.get(type);
+    }
+
+    final class Converters {
+        private static final Map<Class<?>, ValueConverter> CONVERTERS = new HashMap<>();
+
+        static {
+            CONVERTERS.put(String.class, s -> s);
+            register(Float.class, float.class, NumberParser::parseFloat);
+            register(Double.class, double.class, NumberParser::parseDouble);
+            register(Long.class, long.class, NumberParser::parseLong);
+            register(Integer.class, int.class, NumberParser::parseInt);
+            register(Short.class, short.class, NumberParser::parseShort);
+            register(Byte.class, byte.class, NumberParser::parseByte);
+            register(Boolean.class, boolean.class, Boolean::parseBoolean);
+            CONVERTERS.put(BigDecimal.class, NumberParser::parseBigDecimal);
+            CONVERTERS.put(BigInteger.class, NumberParser::parseBigInteger);
+        }
+
+        private Converters() {
+        }
+
+        private static void register(Class<?> wrapperType, Class<?> primitiveType, ValueConverter converter) {
+            CONVERTERS.put(wrapperType, converter);
+            CONVERTERS.put(primitiveType, converter);
+        }
+    }
+}
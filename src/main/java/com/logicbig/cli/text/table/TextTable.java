@@ -17,22 +17,47 @@
 package com.logicbig.cli.text.table;
 
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * A convenient way to write multiple columns in text format. We can define multiple columns of different type.
  * It's necessary to provide the table width during construction time. Ideally only one column of String should be
- * provide wrap=true property.
+ * provide wrap=true property. By default the rows are kept until the table is printed, so that the column widths
+ * fit all values. In streaming mode the rows are printed while they are added, see {@link #streamRows(int)}. A
+ * large table can be rendered on multiple threads, see {@link #renderInParallel(boolean)}.
  *
  * @author : Joe Khan
  */
 public class TextTable {
 
-    private int terminalWidth;
+    private static final String LINE_BREAK = System.getProperty("line.separator");
 
-    private Map<TextTableColumn, List<Object>> columns = new LinkedHashMap<TextTableColumn, List<Object>>();
+    //the number of rows rendered by one task of the parallel rendering
+    private static final int PARALLEL_BLOCK_ROWS = 1024;
+
+    private final int terminalWidth;
+
+    private final Appendable out;
+
+    //the number of rows sampled in streaming mode, -1 if the rows are kept until the table is printed
+    private int sampleRows = -1;
+
+    private boolean widthsComputed;
+
+    private boolean parallel;
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    //renders the rows printed on the calling thread, replaced if the column widths change
+    private RowRenderer renderer;
+
+    private List<TextTableColumn> columns = new ArrayList<TextTableColumn>();
 
     /**
      * TextTable constructor. If width is less than 1 then default value of 80 is used.
@@ -40,7 +65,19 @@ public class TextTable {
      * @param width
      */
     public TextTable(int width) {
+        this(width, null);
+    }
+
+    /**
+     * TextTable constructor. If width is less than 1 then default value of 80 is used. The table is printed to the
+     * provided output, one append call per row including the line breaks.
+     *
+     * @param width
+     * @param out   the output to print the table to, System.out is used if null
+     */
+    public TextTable(int width, Appendable out) {
         terminalWidth = width <= 1 ? 80 : width;
+        this.out = out;
     }
 
     /**
@@ -52,12 +89,13 @@ public class TextTable {
      * @return
      */
     public TextTable addStringColumn(boolean rightAlign, int leadingSpaces, boolean wrapString) {
-        columns.put(new TextTableStringColumn(rightAlign, leadingSpaces, wrapString), new ArrayList<Object>());
+        columns.add(new TextTableStringColumn(rightAlign, leadingSpaces, wrapString));
+        renderer = null;
         return this;
     }
 
     /**
-     * Add a integer column. Could be byte, integer, short, long
+     * Add a integer column. Could be byte, integer, short, long or BigInteger. The values are stored as primitives.
      *
      * @param rightAlign
      * @param trailingSpaces
@@ -65,35 +103,27 @@ public class TextTable {
      * @return
      */
     public TextTable addIntegralColumn(boolean rightAlign, int trailingSpaces, boolean autoFillZeros) {
-        columns.put(new TextTableIntegralColumn(rightAlign, trailingSpaces, autoFillZeros), new ArrayList<Object>());
+        columns.add(new TextTableIntegralColumn(rightAlign, trailingSpaces, autoFillZeros));
+        renderer = null;
         return this;
     }
 
-    private TextTable addFloatingPointColumn(Class<? extends Number> dataType, boolean rightAlign, int trailingSpaces, boolean autoFillZeros, float precision) {
-        //   columns.put(new TextTableFloatingPointColumn(rightAlign, trailingSpaces, autoFillZeros));
-        //todo
+    /**
+     * Add a floating point column, any Number is printed with the provided number of decimals. The values are
+     * stored as primitive doubles.
+     *
+     * @param rightAlign
+     * @param leadingSpaces
+     * @param autoFillZeros
+     * @param precision     the number of decimals, between 0 and 18
+     * @return
+     */
+    public TextTable addFloatingPointColumn(boolean rightAlign, int leadingSpaces, boolean autoFillZeros, int precision) {
+        columns.add(new TextTableFloatingPointColumn(rightAlign, leadingSpaces, autoFillZeros, precision));
+        renderer = null;
         return this;
     }
 
-    private String getLeadingSpaces(TextTableColumn column) {
-        StringBuilder sb = new StringBuilder();
-        Formatter formatter = new Formatter(sb, Locale.US);
-        formatter.format("%" + column.getLeadingSpaces() + "s", "");
-
-        return sb.toString();
-
-    }
-
-    // convert everything into string.. don't apply wrapping logging yet
-    private String doConversion(Object object, TextTableColumn column) {
-
-        StringBuilder sb = new StringBuilder();
-        Formatter formatter = new Formatter(sb, Locale.US);
-        formatter.format(column.getFormat(), object);
-
-        return sb.toString();
-    }
-
     /**
      * Add a row. The number of objects provided should be equal to number of columns defined.
      *
@@ -101,7 +131,7 @@ public class TextTable {
      */
     public void addRow(Object... objects) {
         checkNull(objects);
-        validateSize(Arrays.asList(objects));
+        validateSize(objects.length);
         addRow(Arrays.asList(objects));
     }
 
@@ -110,27 +140,70 @@ public class TextTable {
      *
      * @param objects
      */
-    public void addRow(List<Object> objects) {
+    public void addRow(List<?> objects) {
+        int rowCount = getRowCount();
+        try {
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).addValue(objects.get(i));
+            }
+        } catch (RuntimeException e) {
+            discardRow(rowCount);
+            throw e;
+        }
+        rowAdded();
+    }
 
-        ArrayList<Map.Entry<TextTableColumn, List<Object>>> columnEntries = new ArrayList<>(columns.entrySet());
+    /**
+     * Add a row of numbers without boxing them. All columns must be integral or floating point columns, a String
+     * column gets the decimal representation of the value.
+     *
+     * @param values
+     */
+    public void addRow(long[] values) {
+        validateSize(values.length);
+        int rowCount = getRowCount();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                columns.get(i).addValue(values[i]);
+            }
+        } catch (RuntimeException e) {
+            discardRow(rowCount);
+            throw e;
+        }
+        rowAdded();
+    }
 
-        for (int i = 0; i < columnEntries.size(); i++) {
+    /**
+     * Add a row of floating point numbers without boxing them. All columns must be floating point columns, a
+     * String column gets the decimal representation of the value.
+     *
+     * @param values
+     */
+    public void addRow(double[] values) {
+        validateSize(values.length);
+        int rowCount = getRowCount();
+        try {
+            for (int i = 0; i < values.length; i++) {
+                columns.get(i).addValue(values[i]);
+            }
+        } catch (RuntimeException e) {
+            discardRow(rowCount);
+            throw e;
+        }
+        rowAdded();
+    }
 
-            Map.Entry<TextTableColumn, List<Object>> entry = columnEntries.get(i);
-            TextTableColumn column = entry.getKey();
-            Object o = objects.get(i);
-            checkCompatibility(o, column);
-            entry.getValue().add(o);
+    private void discardRow(int rowCount) {
+        for (TextTableColumn column : columns) {
+            column.truncateValues(Math.min(rowCount, column.getRowCount()));
         }
     }
 
-    private void checkCompatibility(Object o, TextTableColumn column) {
-        Class<?> oClass = o.getClass();
-        if ((column instanceof TextTableStringColumn && oClass != String.class) &&
-                (column instanceof TextTableIntegralColumn && (oClass != Integer.class || oClass != Byte.class || oClass != Short.class || oClass != Long.class || oClass != BigDecimal.class))
-            //todo: do the same for charachter and floating point
-                ) {
-            //  throw new JCFormatException("Object type is not compatible with specified column type. Object type=" + o.getClass() + " Column type=" + column.getDataType());
+    private void rowAdded() {
+        if (widthsComputed) {
+            printRows(getOutput());
+        } else if (sampleRows != -1 && getRowCount() == sampleRows) {
+            printTable();
         }
     }
 
@@ -140,216 +213,353 @@ public class TextTable {
         }
     }
 
-    private void validateSize(List<Object> objects) {
-        if (columns.size() != objects.size()) {
-            throw new IllegalArgumentException("printRow expect equal number of arguments as column : columns=" + columns.size() + " objects=" + objects.size());
+    private void validateSize(int size) {
+        if (columns.size() != size) {
+            throw new IllegalArgumentException("printRow expect equal number of arguments as column : columns=" + columns.size() + " objects=" + size);
         }
     }
 
     /**
-     * Prints the table as console output.
+     * Switches to streaming mode, which prints the rows while they are added instead of keeping them until
+     * {@link #printTable()}, so the memory use doesn't depend on the number of rows. The column widths are computed
+     * from the first rows, which are printed once the sample is complete. A later String value wider than its
+     * column is wrapped. A wider number overflows its column, shifting the following columns of its row only, the
+     * widths of the other rows are unchanged. Must be called before adding any row.
+     *
+     * @param sampleRows the number of rows the column widths are computed from
+     * @return this table
      */
-    public void printTable() {
-        ArrayList<Map.Entry<TextTableColumn, List<Object>>> columnEntries = new ArrayList<Map.Entry<TextTableColumn, List<Object>>>(columns.entrySet());
-
-
-        int totalStringDisplayWrapWidth = 0;
-        int rows = -1;
-        for (int i = 0; i < columnEntries.size(); i++) {
-            Map.Entry<TextTableColumn, List<Object>> entry = columnEntries.get(i);
-            TextTableColumn column = entry.getKey();
-            List<Object> objects = entry.getValue();
-            if (rows == -1) {
-                rows = objects.size();
-                if (rows == 0) {
-                    return;
-                }
-            }
-            if (column instanceof TextTableStringColumn) {
-                List<String> stringRow = objects.stream().map(o -> o.toString()).collect(Collectors.toList());
-                Integer integer = stringRow.stream().map(s -> s.length()).reduce(0, (c, len) -> Math.max(c, len));
-                column.setDisplayWidth(integer == null ? 0 : integer);
-                if (!((TextTableStringColumn) column).isWrapString()) {
-                    terminalWidth -= column.getDisplayWidth();
-                } else {
-                    totalStringDisplayWrapWidth += column.getDisplayWidth();
-                }
-            } else if (column instanceof TextTableIntegralColumn) {
-
-                List<String> stringRow = objects.stream().map(o -> o.toString()).collect(Collectors.toList());
-                Integer integer = stringRow.stream().map(s -> s.length()).reduce(0, (c, len) -> Math.max(c, len));
-                column.setDisplayWidth(integer == null ? 0 : integer);
-                terminalWidth -= column.getDisplayWidth();
-            } else if (column instanceof TextTableFloatingPointColumn) {
-                //todo: do it later
-            }
-
-            //totalDisplayWidth += column.getDisplayWidth();
-
-
+    public TextTable streamRows(int sampleRows) {
+        if (sampleRows < 1) {
+            throw new IllegalArgumentException("At least one row must be sampled: " + sampleRows);
         }
+        checkNoRows();
+        this.sampleRows = sampleRows;
+        return this;
+    }
 
-        for (TextTableColumn column : columns.keySet()) {
-            if (column instanceof TextTableStringColumn && ((TextTableStringColumn) column).isWrapString()) {
-                column.setDisplayWidth((column.getDisplayWidth() * terminalWidth) / totalStringDisplayWrapWidth);
+    /**
+     * Switches to streaming mode with fixed column widths, every row is printed as soon as it's added. See
+     * {@link #streamRows(int)}.
+     *
+     * @param columnWidths the width of each column, not including the leading spaces
+     * @return this table
+     */
+    public TextTable streamRowsWithWidths(int... columnWidths) {
+        validateSize(columnWidths.length);
+        checkNoRows();
+        int c = 0;
+        for (TextTableColumn column : columns) {
+            if (columnWidths[c] < 1) {
+                throw new IllegalArgumentException("Column width must be positive: " + columnWidths[c]);
             }
-            column.buildFormat();
+            column.setDisplayWidth(columnWidths[c++]);
         }
+        renderer = null;
+        sampleRows = 0;
+        widthsComputed = true;
+        return this;
+    }
 
+    /**
+     * Renders a large table on the common {@link ForkJoinPool}: the column widths are computed in parallel, and
+     * blocks of rows are formatted concurrently into separate buffers. The blocks are written in order, one append
+     * call per block, so the output is the same as with serial rendering. Tables of a few thousand rows or less are
+     * always rendered on the calling thread.
+     *
+     * @param parallel true to render in parallel
+     * @return this table
+     */
+    public TextTable renderInParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+    }
 
-        List<List<List<String>>> rowLines = new ArrayList<List<List<String>>>();
-        List<Integer> maxLinesPerRow = new ArrayList<Integer>();
-
-        for (int i = 0; i < rows; i++) {
-            List<List<String>> row = new ArrayList<List<String>>();
-            rowLines.add(row);
-            int maxLines = 1;
-
-            for (Map.Entry<TextTableColumn, List<Object>> entry : columns.entrySet()) {
-                TextTableColumn column = entry.getKey();
-                Object object = entry.getValue().get(i);
+    /**
+     * Compiles the columns, the width and the parallel rendering setting of this table into a layout, which can be
+     * rendered any number of times against different rows. The rows and the streaming mode of this table are not
+     * part of the layout.
+     *
+     * @return the layout
+     * @see TextTableLayout
+     */
+    public TextTableLayout compileLayout() {
+        return new TextTableLayout(terminalWidth, parallel, columns);
+    }
 
-                row.add(Arrays.asList(getLeadingSpaces(column)));
-                if (column instanceof TextTableStringColumn) {
-                    String stringValue = object.toString();
-                    if (stringValue.length() > column.getDisplayWidth()) {
-                        List<String> lines = wrapString(stringValue, column.getDisplayWidth());
-                        List<String> formattedLines = new ArrayList<String>();
-                        for (String uf : lines) {
-                            formattedLines.add(doConversion(uf, column));
-                        }
-                        row.add(formattedLines);
-                        maxLines = Math.max(maxLines, lines.size());
+    private boolean isRenderedInParallel(int rows) {
+        return isRenderedInParallel(parallel, rows);
+    }
 
-                    } else {
-                        row.add(Arrays.asList(doConversion(stringValue, column)));
-                    }
+    static boolean isRenderedInParallel(boolean parallel, int rows) {
+        return parallel && rows >= 2 * PARALLEL_BLOCK_ROWS;
+    }
 
-                } else if (column instanceof TextTableIntegralColumn) {
-                    row.add(Arrays.asList(doConversion(object, column)));
-                } else if (column instanceof TextTableFloatingPointColumn) {
-                    //todo: do it later
-                }
-            }
-            maxLinesPerRow.add(maxLines);
+    private void checkNoRows() {
+        if (getRowCount() > 0) {
+            throw new IllegalStateException("Streaming must be enabled before adding rows");
         }
+    }
 
+    private int getRowCount() {
+        return columns.isEmpty() ? 0 : columns.get(0).getRowCount();
+    }
 
-        List<TextTableColumn> cols = new ArrayList<TextTableColumn>(columns.keySet());
-        for (int i = 0; i < rowLines.size(); i++) {
-            List<List<String>> row = rowLines.get(i);
-            int lines = maxLinesPerRow.get(i);
+    /**
+     * Prints the table to the output provided during construction, or as console output. In streaming mode, only
+     * the rows which have not been printed yet are printed.
+     */
+    public void printTable() {
+        printTable(getOutput());
+        if (out == null) {
+            System.out.flush();
+        }
+    }
 
-            int totalC = cols.size() * 2;
+    private void printTable(Appendable output) {
+        if (getRowCount() == 0) {
+            return;
+        }
+        if (!widthsComputed) {
+            computeWidths();
+            //the widths of a streamed table don't change anymore
+            widthsComputed = sampleRows != -1;
+        }
+        printRows(output);
+    }
 
+    private Appendable getOutput() {
+        return out != null ? out : System.out;
+    }
 
-            for (int r = 0; r < lines; r++) {
-                for (int loop = 0, c = 0; c < totalC; c = c + 2, loop++) {
+    private void computeWidths() {
+        int rows = getRowCount();
+        int[] widths = new int[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            widths[c] = computeValuesWidth(columns.get(c), rows);
+        }
+        fitWrappedColumns(columns, widths, terminalWidth);
+        for (int c = 0; c < columns.size(); c++) {
+            columns.get(c).setDisplayWidth(widths[c]);
+        }
+        renderer = null;
+    }
 
-                    String spaces = row.get(c).get(0);
-                    System.out.printf(spaces);
+    /**
+     * Shares the width the other columns leave among the wrapped String columns, in proportion to the width of
+     * their widest value.
+     *
+     * @param widths the width of the widest value of each column, replaced by the width of the wrapped columns
+     */
+    static void fitWrappedColumns(List<TextTableColumn> columns, int[] widths, int terminalWidth) {
+        int availableWidth = terminalWidth;
+        int totalStringDisplayWrapWidth = 0;
+        for (int c = 0; c < columns.size(); c++) {
+            if (isWrapped(columns.get(c))) {
+                totalStringDisplayWrapWidth += widths[c];
+            } else {
+                availableWidth -= widths[c];
+            }
+        }
 
-                    List<String> cellData = row.get(c + 1);
+        for (int c = 0; c < columns.size(); c++) {
+            if (isWrapped(columns.get(c)) && totalStringDisplayWrapWidth > 0) {
+                widths[c] = (widths[c] * availableWidth) / totalStringDisplayWrapWidth;
+            }
+        }
+    }
 
-                    if (r < cellData.size()) {
+    private static boolean isWrapped(TextTableColumn column) {
+        return column instanceof TextTableStringColumn && ((TextTableStringColumn) column).isWrapString();
+    }
 
-                        System.out.print(cellData.get(r));
-                    } else {
-                        System.out.printf("%" + cols.get(loop).getDisplayWidth() + "s", "");
-                    }
+    private int computeValuesWidth(TextTableColumn column, int rows) {
+        if (!isRenderedInParallel(rows)) {
+            return column.computeValuesWidth();
+        }
+        return computeInParallel(rows, column::computeValuesWidth);
+    }
 
+    /**
+     * Computes the provided width for each block of rows concurrently.
+     *
+     * @return the largest width of all blocks
+     */
+    static int computeInParallel(int rows, IntBinaryOperator blockWidth) {
+        int blocks = (rows + PARALLEL_BLOCK_ROWS - 1) / PARALLEL_BLOCK_ROWS;
+        return IntStream.range(0, blocks).parallel()
+                .map(b -> blockWidth.applyAsInt(b * PARALLEL_BLOCK_ROWS,
+                        Math.min(rows, (b + 1) * PARALLEL_BLOCK_ROWS)))
+                .max().orElse(0);
+    }
 
+    /**
+     * Prints the stored rows, a streamed table doesn't keep them afterwards. Each row is rendered into the line
+     * buffer and written with a single append call.
+     */
+    private void printRows(Appendable output) {
+        int rows = getRowCount();
+        if (isRenderedInParallel(rows)) {
+            int[] widths = getDisplayWidths();
+            printInParallel(rows, (fromRow, toRow) -> {
+                RowRenderer blockRenderer = new RowRenderer(columns, widths);
+                StringBuilder block = newBlock(fromRow, toRow, terminalWidth);
+                for (int i = fromRow; i < toRow; i++) {
+                    blockRenderer.renderRow(i, block);
                 }
-                System.out.println();
+                return block;
+            }, output);
+        } else {
+            if (renderer == null) {
+                renderer = new RowRenderer(columns, getDisplayWidths());
+            }
+            for (int i = 0; i < rows; i++) {
+                line.setLength(0);
+                renderer.renderRow(i, line);
+                append(output, line);
             }
-
-
         }
-    }
-
-    private static List<String> breakString(String bigString, int maxWidth) {
-        List<String> lines = new ArrayList<String>();
-        if (bigString == null || bigString.length() == 0) {
-            return lines;
+        if (sampleRows != -1) {
+            discardRow(0);
         }
+    }
 
-        if (bigString.length() <= maxWidth) {
-            lines.add(bigString);
-            return lines;
+    private int[] getDisplayWidths() {
+        int[] widths = new int[columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            widths[c] = columns.get(c).getDisplayWidth();
         }
+        return widths;
+    }
 
-        String temp = bigString;
-        while (true) {
-            if (temp.length() <= maxWidth) {
-                lines.add(temp);
-                break;
+    /**
+     * Renders blocks of rows concurrently on the common {@link ForkJoinPool} and appends them to the output in
+     * order, one append call per block.
+     */
+    static void printInParallel(int rows, BlockRenderer blockRenderer, Appendable output) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int blocks = (rows + PARALLEL_BLOCK_ROWS - 1) / PARALLEL_BLOCK_ROWS;
+        //only a few blocks are rendered ahead of the output, so they don't take as much memory as the whole table
+        int renderedAhead = Math.max(2, pool.getParallelism() * 4);
+        Deque<ForkJoinTask<StringBuilder>> pending = new ArrayDeque<>();
+        int submitted = 0;
+        try {
+            for (int b = 0; b < blocks; b++) {
+                while (submitted < blocks && submitted < b + renderedAhead) {
+                    int fromRow = submitted * PARALLEL_BLOCK_ROWS;
+                    int toRow = Math.min(rows, fromRow + PARALLEL_BLOCK_ROWS);
+                    pending.add(pool.submit(() -> blockRenderer.render(fromRow, toRow)));
+                    submitted++;
+                }
+                append(output, pending.poll().join());
+            }
+        } finally {
+            for (ForkJoinTask<StringBuilder> task : pending) {
+                task.cancel(false);
             }
-            lines.add(temp.substring(0, maxWidth));
-            temp = temp.substring(maxWidth);
         }
+    }
 
-
-        return lines;
+    static StringBuilder newBlock(int fromRow, int toRow, int terminalWidth) {
+        return new StringBuilder((toRow - fromRow) * (terminalWidth + LINE_BREAK.length()));
     }
 
-    private static String breakString(String temp, int maxWidth, List<String> lines) {
-        if (temp.length() >= maxWidth) {
-            List<String> brokenStrings = breakString(temp, maxWidth);
-            temp = brokenStrings.get(brokenStrings.size() - 1);
-            brokenStrings.remove(brokenStrings.size() - 1);
-            lines.addAll(brokenStrings);
+    static void append(Appendable output, CharSequence text) {
+        try {
+            output.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return temp;
     }
 
+    /**
+     * Renders the rows from fromRow up to toRow, exclusive, into a new buffer.
+     */
+    interface BlockRenderer {
+        StringBuilder render(int fromRow, int toRow);
+    }
 
-    static List<String> wrapString(String bigString, int maxWidth) {
-        List<String> lines = new ArrayList<String>();
+    /**
+     * Renders rows including the line breaks with the provided column widths, an instance is used by one thread
+     * only. A row is either a stored row of the columns or a list of values, which the columns format without
+     * storing them.
+     */
+    static final class RowRenderer {
+        private final List<TextTableColumn> columns;
+        private final int[] widths;
 
-        if (bigString == null || bigString.length() == 0) {
-            return lines;
-        }
+        //the wrapped lines of the String values of the current row, reused for every row
+        private final WordWrap[] wrappedCells;
 
-        String[] strings = bigString.split("\\s+");
+        //the number of wrapped lines of each value of the current row, -1 for a single line value
+        private final int[] cellLineCounts;
 
-        if (strings.length == 0) {
-            return lines;
+        RowRenderer(List<TextTableColumn> columns, int[] widths) {
+            this.columns = columns;
+            this.widths = widths;
+            wrappedCells = new WordWrap[columns.size()];
+            cellLineCounts = new int[columns.size()];
         }
-        String temp = strings[0];
-        temp = breakString(temp, maxWidth, lines);
 
-        if (strings.length == 1) {
-            lines.add(temp);
-            return lines;
+        void renderRow(int row, StringBuilder line) {
+            renderRow(null, row, line);
         }
 
-        for (int i = 1; i < strings.length; i++) {
-            String s = strings[i];
+        void renderRow(List<?> values, StringBuilder line) {
+            renderRow(values, -1, line);
+        }
 
-            if (temp.length() + s.length() + 1 > maxWidth) {
-                if (temp.length() >= maxWidth) {
-                    lines.addAll(breakString(temp, maxWidth));
-                } else {
-                    lines.add(temp);
+        private void renderRow(List<?> values, int row, StringBuilder line) {
+            int lines = 1;
+            for (int c = 0; c < columns.size(); c++) {
+                TextTableColumn column = columns.get(c);
+                cellLineCounts[c] = -1;
+                if (column instanceof TextTableStringColumn) {
+                    String stringValue = values != null ? String.valueOf(values.get(c)) :
+                            ((TextTableStringColumn) column).getValue(row);
+                    if (DisplayWidth.of(stringValue) > widths[c]) {
+                        if (wrappedCells[c] == null) {
+                            wrappedCells[c] = new WordWrap();
+                        }
+                        cellLineCounts[c] = wrappedCells[c].wrap(stringValue, widths[c]);
+                        lines = Math.max(lines, cellLineCounts[c]);
+                    }
                 }
+            }
 
-                if (i == strings.length - 1) {
-                    lines.addAll(breakString(s, maxWidth));
-                    break;
-                } else {
-                    temp = s;
-                    continue;
+            for (int r = 0; r < lines; r++) {
+                for (int c = 0; c < columns.size(); c++) {
+                    TextTableColumn column = columns.get(c);
+                    TextTableColumn.appendSpaces(line, column.getLeadingSpaceCount());
+                    if (cellLineCounts[c] != -1) {
+                        if (r < cellLineCounts[c]) {
+                            appendWrappedLine(line, column.isRightJustify(), widths[c], wrappedCells[c], r);
+                        } else {
+                            TextTableColumn.appendSpaces(line, widths[c]);
+                        }
+                    } else if (r > 0) {
+                        TextTableColumn.appendSpaces(line, widths[c]);
+                    } else if (values != null) {
+                        column.appendFormattedValue(values.get(c), widths[c], line);
+                    } else {
+                        column.appendValue(row, widths[c], line);
+                    }
                 }
-            } else {
-                temp += " " + s;
+                line.append(LINE_BREAK);
             }
+        }
 
-            if (i == strings.length - 1) {
-                lines.add(temp);
+        private static void appendWrappedLine(StringBuilder line, boolean rightJustify, int width, WordWrap wrap,
+                                              int wrappedLine) {
+            int padding = width - wrap.getLineWidth(wrappedLine);
+            if (rightJustify) {
+                TextTableColumn.appendSpaces(line, padding);
+                wrap.appendLine(wrappedLine, line);
+            } else {
+                wrap.appendLine(wrappedLine, line);
+                TextTableColumn.appendSpaces(line, padding);
             }
-
         }
-        return lines;
     }
 
     public static void main(String... strings) {
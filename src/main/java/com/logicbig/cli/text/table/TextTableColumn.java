@@ -21,21 +21,20 @@ package com.logicbig.cli.text.table;
  */
 abstract class TextTableColumn {
     private boolean rightJustify;
-    private String leadingSpaces;
+    private final int leadingSpaceCount;
     private int displayWidth;
-    private String format;
 
     public TextTableColumn(boolean rightJustify, int leadingSpaces) {
         this.rightJustify = rightJustify;
-        this.leadingSpaces = leadingSpaces == 0 ? "" : leadingSpaces + "";
+        this.leadingSpaceCount = leadingSpaces;
     }
 
     public boolean isRightJustify() {
         return rightJustify;
     }
 
-    public String getLeadingSpaces() {
-        return leadingSpaces;
+    int getLeadingSpaceCount() {
+        return leadingSpaceCount;
     }
 
     public int getDisplayWidth() {
@@ -46,13 +45,112 @@ abstract class TextTableColumn {
         this.displayWidth = displayWidth;
     }
 
-    public void buildFormat() {
-        this.format = provideFormat();
+    /**
+     * Stores a value of this column until it's printed.
+     *
+     * @throws IllegalArgumentException if the value is not compatible with the column type
+     */
+    abstract void addValue(Object value);
+
+    void addValue(long value) {
+        addValue((Object) value);
+    }
+
+    void addValue(double value) {
+        addValue((Object) value);
     }
 
-    public String getFormat() {
-        return this.format;
+    /**
+     * @return a column with the same settings and no values
+     */
+    abstract TextTableColumn newEmptyColumn();
+
+    abstract int getRowCount();
+
+    /**
+     * Discards the values of the rows from the provided row on.
+     */
+    abstract void truncateValues(int rowCount);
+
+    /**
+     * @return the width of the widest stored value
+     */
+    int computeValuesWidth() {
+        return computeValuesWidth(0, getRowCount());
     }
 
-    protected abstract String provideFormat();
+    /**
+     * @return the width of the widest value of the provided rows
+     */
+    abstract int computeValuesWidth(int fromRow, int toRow);
+
+    /**
+     * @return the width of the provided value, which is not stored
+     * @throws IllegalArgumentException if the value is not compatible with the column type
+     */
+    abstract int computeValueWidth(Object value);
+
+    /**
+     * Appends the value of the provided row justified within the provided width.
+     */
+    abstract void appendValue(int row, int width, StringBuilder line);
+
+    /**
+     * Appends the provided value, which is not stored, justified within the provided width.
+     *
+     * @throws IllegalArgumentException if the value is not compatible with the column type
+     */
+    abstract void appendFormattedValue(Object value, int width, StringBuilder line);
+
+    /**
+     * Appends the text justified within the provided width, the text takes textWidth columns and a wider text is
+     * not truncated.
+     */
+    final void appendJustified(StringBuilder line, CharSequence text, int textWidth, int width) {
+        int padding = width - textWidth;
+        if (rightJustify) {
+            appendSpaces(line, padding);
+            line.append(text);
+        } else {
+            line.append(text);
+            appendSpaces(line, padding);
+        }
+    }
+
+    static void appendSpaces(StringBuilder line, int count) {
+        for (int i = 0; i < count; i++) {
+            line.append(' ');
+        }
+    }
+
+    static void appendZeros(StringBuilder line, int count) {
+        for (int i = 0; i < count; i++) {
+            line.append('0');
+        }
+    }
+
+    static IllegalArgumentException incompatibleValue(Object value, String columnType) {
+        return new IllegalArgumentException("Object type is not compatible with " + columnType + " column. Object type=" +
+                (value == null ? null : value.getClass().getName()));
+    }
+
+    /**
+     * @return the number of characters of the decimal representation of the value, including the minus sign
+     */
+    static int stringSize(long value) {
+        if (value == Long.MIN_VALUE) {
+            return 20;
+        }
+        int sign = 0;
+        if (value < 0) {
+            sign = 1;
+            value = -value;
+        }
+        //a long has at most 19 digits, the limit would overflow after that
+        int digits = 1;
+        for (long limit = 10; digits < 19 && value >= limit; limit *= 10) {
+            digits++;
+        }
+        return sign + digits;
+    }
 }
\ No newline at end of file
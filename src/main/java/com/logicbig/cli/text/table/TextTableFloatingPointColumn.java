@@ -17,16 +17,270 @@
 package com.logicbig.cli.text.table;
 
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
 /**
+ * A column of float, double or BigDecimal values printed with a fixed number of decimals, rounded half up like the
+ * %f format. The values are stored as primitive doubles, only BigDecimal and BigInteger values are kept as objects
+ * so they are printed exactly. A double is formatted straight into the row without creating any objects, unless it
+ * is too large or too close to a rounding tie, which are rounded exactly.
+ *
  * @author Joe Khan
  */
-class TextTableFloatingPointColumn extends TextTableColumn {
-    public TextTableFloatingPointColumn(boolean rightJustify, int trailingSpaces) {
-        super(rightJustify, trailingSpaces);
+public class TextTableFloatingPointColumn extends TextTableColumn {
+    private static final long[] TEN_POWERS = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+            100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+            100000000000000L, 1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L};
+    //the largest scaled value whose fraction is still precise enough to be rounded without BigDecimal
+    private static final double MAX_FAST_SCALED = 1e15;
+    //how close to a tie the scaled value has to be, in ulps, to be rounded exactly
+    private static final int TIE_ULPS = 4;
+
+    private final boolean autoFillZeros;
+    private final int precision;
+    private final double scale;
+    private double[] values = new double[16];
+    private BigDecimal[] bigValues;
+    private int size;
+
+    /**
+     * @param rightJustify
+     * @param leadingSpaces
+     * @param autoFillZeros
+     * @param precision     the number of decimals, between 0 and 18
+     */
+    public TextTableFloatingPointColumn(boolean rightJustify, int leadingSpaces, boolean autoFillZeros, int precision) {
+        super(rightJustify, leadingSpaces);
+        if (precision < 0 || precision >= TEN_POWERS.length) {
+            throw new IllegalArgumentException("Precision must be between 0 and " + (TEN_POWERS.length - 1) + ": " +
+                    precision);
+        }
+        this.autoFillZeros = autoFillZeros;
+        this.precision = precision;
+        this.scale = TEN_POWERS[precision];
+    }
+
+    public boolean isAutoFillZeros() {
+        return autoFillZeros;
+    }
+
+    public int getPrecision() {
+        return precision;
     }
 
     @Override
-    protected String provideFormat() {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+    TextTableColumn newEmptyColumn() {
+        return new TextTableFloatingPointColumn(isRightJustify(), getLeadingSpaceCount(), autoFillZeros, precision);
+    }
+
+    @Override
+    void addValue(Object value) {
+        BigDecimal bigDecimal = toBigDecimal(value);
+        if (bigDecimal != null) {
+            if (bigValues == null) {
+                bigValues = new BigDecimal[values.length];
+            }
+            addValue(0d);
+            bigValues[size - 1] = bigDecimal;
+        } else {
+            addValue(toDouble(value));
+        }
+    }
+
+    /**
+     * @return the value as BigDecimal if it's a BigDecimal or a BigInteger, otherwise null
+     */
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        return value instanceof BigInteger ? new BigDecimal((BigInteger) value) : null;
+    }
+
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        throw incompatibleValue(value, "floating point");
+    }
+
+    @Override
+    void addValue(long value) {
+        addValue((double) value);
+    }
+
+    @Override
+    void addValue(double value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1));
+            if (bigValues != null) {
+                bigValues = Arrays.copyOf(bigValues, values.length);
+            }
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    int getRowCount() {
+        return size;
+    }
+
+    @Override
+    void truncateValues(int rowCount) {
+        if (bigValues != null) {
+            Arrays.fill(bigValues, rowCount, size, null);
+        }
+        size = rowCount;
+    }
+
+    @Override
+    int computeValuesWidth(int fromRow, int toRow) {
+        int width = 0;
+        for (int i = fromRow; i < toRow; i++) {
+            BigDecimal bigValue = bigValues != null ? bigValues[i] : null;
+            width = Math.max(width, bigValue != null ? width(bigValue) : width(values[i]));
+        }
+        return width;
+    }
+
+    @Override
+    int computeValueWidth(Object value) {
+        BigDecimal bigValue = toBigDecimal(value);
+        return bigValue != null ? width(bigValue) : width(toDouble(value));
+    }
+
+    /**
+     * @return the length of the value formatted with the precision of this column
+     */
+    private int width(double value) {
+        if (Double.isNaN(value)) {
+            return 3;
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? 8 : 9;
+        }
+        int sign = isNegative(value) ? 1 : 0;
+        double abs = Math.abs(value);
+        long scaled = roundScaled(abs);
+        if (scaled >= 0) {
+            return sign + stringSize(scaled / TEN_POWERS[precision]) + (precision == 0 ? 0 : precision + 1);
+        }
+        return sign + round(BigDecimal.valueOf(abs)).length();
+    }
+
+    private int width(BigDecimal value) {
+        return (value.signum() < 0 ? 1 : 0) + round(value.abs()).length();
+    }
+
+    //a negative value is printed with the sign even if it's rounded to zero, so is negative zero
+    private static boolean isNegative(double value) {
+        return value < 0 || (value == 0 && 1 / value < 0);
+    }
+
+    /**
+     * Rounds the value half up to the precision of this column, on the shortest decimal representation of the value
+     * as the %f format does. The scaled double is off by a few ulps at most, so the rounding is done on the double
+     * unless it's that close to a tie.
+     *
+     * @return the absolute value multiplied by ten to the power of the precision and rounded, or -1 if it has to be
+     * rounded exactly
+     */
+    private long roundScaled(double abs) {
+        double scaled = abs * scale;
+        if (!(scaled < MAX_FAST_SCALED)) {
+            return -1;
+        }
+        double integral = Math.floor(scaled);
+        double fraction = scaled - integral;
+        if (Math.abs(fraction - 0.5) <= TIE_ULPS * Math.ulp(scaled)) {
+            return -1;
+        }
+        return (long) integral + (fraction > 0.5 ? 1 : 0);
+    }
+
+    private String round(BigDecimal abs) {
+        return abs.setScale(precision, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    @Override
+    void appendValue(int row, int width, StringBuilder line) {
+        BigDecimal bigValue = bigValues != null ? bigValues[row] : null;
+        if (bigValue != null) {
+            appendBigDecimal(bigValue, width, line);
+        } else {
+            appendDouble(values[row], width, line);
+        }
+    }
+
+    @Override
+    void appendFormattedValue(Object value, int width, StringBuilder line) {
+        BigDecimal bigValue = toBigDecimal(value);
+        if (bigValue != null) {
+            appendBigDecimal(bigValue, width, line);
+        } else {
+            appendDouble(toDouble(value), width, line);
+        }
+    }
+
+    private void appendBigDecimal(BigDecimal value, int width, StringBuilder line) {
+        appendText(line, width, value.signum() < 0, round(value.abs()), width(value), true);
+    }
+
+    private void appendDouble(double value, int width, StringBuilder line) {
+        if (Double.isNaN(value)) {
+            appendText(line, width, false, "NaN", 3, false);
+            return;
+        }
+        if (Double.isInfinite(value)) {
+            appendText(line, width, value < 0, "Infinity", value < 0 ? 9 : 8, false);
+            return;
+        }
+        double abs = Math.abs(value);
+        long scaled = roundScaled(abs);
+        if (scaled < 0) {
+            String text = round(BigDecimal.valueOf(abs));
+            appendText(line, width, isNegative(value), text, (isNegative(value) ? 1 : 0) + text.length(), true);
+            return;
+        }
+        int padding = width - width(value);
+        appendPadding(line, isNegative(value), padding, true);
+        long integral = scaled / TEN_POWERS[precision];
+        line.append(integral);
+        if (precision > 0) {
+            long fraction = scaled - integral * TEN_POWERS[precision];
+            line.append('.');
+            appendZeros(line, precision - stringSize(fraction));
+            line.append(fraction);
+        }
+        if (!isRightJustify() && !autoFillZeros) {
+            appendSpaces(line, padding);
+        }
+    }
+
+    private void appendText(StringBuilder line, int width, boolean negative, String digits, int textWidth,
+                            boolean number) {
+        int padding = width - textWidth;
+        appendPadding(line, negative, padding, number);
+        line.append(digits);
+        if (!isRightJustify() && !autoFillZeros) {
+            appendSpaces(line, padding);
+        }
+    }
+
+    //NaN and Infinity are padded with spaces even if zeros are filled, as with the %0f format
+    private void appendPadding(StringBuilder line, boolean negative, int padding, boolean number) {
+        boolean fillZeros = autoFillZeros && number;
+        if (!fillZeros && (isRightJustify() || autoFillZeros)) {
+            appendSpaces(line, padding);
+        }
+        if (negative) {
+            line.append('-');
+        }
+        if (fillZeros) {
+            appendZeros(line, padding);
+        }
     }
 }
@@ -16,11 +16,20 @@
 
 package com.logicbig.cli.text.table;
 
+import java.math.BigInteger;
+import java.util.Arrays;
+
 /**
+ * A column of byte, short, int, long or BigInteger values. The values are stored as primitive longs, only a
+ * BigInteger which doesn't fit into a long is kept as object.
+ *
  * @author Joe Khan
  */
 public class TextTableIntegralColumn extends TextTableColumn {
     private boolean autoFillZeros;
+    private long[] values = new long[16];
+    private BigInteger[] bigValues;
+    private int size;
 
     public TextTableIntegralColumn(boolean rightJustify, int trailingSpaces, boolean autoFillZeros) {
         super(rightJustify, trailingSpaces);
@@ -32,7 +41,135 @@ public class TextTableIntegralColumn extends TextTableColumn {
     }
 
     @Override
-    protected String provideFormat() {
-        return "%" + (isRightJustify() || isAutoFillZeros() ? "" : "-") + (isAutoFillZeros() ? "0" : "") + getDisplayWidth() + "d";
+    TextTableColumn newEmptyColumn() {
+        return new TextTableIntegralColumn(isRightJustify(), getLeadingSpaceCount(), autoFillZeros);
+    }
+
+    @Override
+    void addValue(Object value) {
+        if (isBig(value)) {
+            if (bigValues == null) {
+                bigValues = new BigInteger[values.length];
+            }
+            addValue(0L);
+            bigValues[size - 1] = (BigInteger) value;
+        } else {
+            addValue(toLong(value));
+        }
+    }
+
+    //a BigInteger which doesn't fit into a long
+    private static boolean isBig(Object value) {
+        return value instanceof BigInteger && ((BigInteger) value).bitLength() >= 64;
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ||
+                value instanceof BigInteger) {
+            return ((Number) value).longValue();
+        }
+        throw incompatibleValue(value, "integral");
+    }
+
+    @Override
+    void addValue(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1));
+            if (bigValues != null) {
+                bigValues = Arrays.copyOf(bigValues, values.length);
+            }
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    void addValue(double value) {
+        throw incompatibleValue(value, "integral");
+    }
+
+    @Override
+    int getRowCount() {
+        return size;
+    }
+
+    @Override
+    void truncateValues(int rowCount) {
+        if (bigValues != null) {
+            Arrays.fill(bigValues, rowCount, size, null);
+        }
+        size = rowCount;
+    }
+
+    @Override
+    int computeValuesWidth(int fromRow, int toRow) {
+        int width = 0;
+        for (int i = fromRow; i < toRow; i++) {
+            BigInteger bigValue = bigValues != null ? bigValues[i] : null;
+            width = Math.max(width, bigValue != null ? bigValue.toString().length() : stringSize(values[i]));
+        }
+        return width;
+    }
+
+    @Override
+    int computeValueWidth(Object value) {
+        return isBig(value) ? value.toString().length() : stringSize(toLong(value));
+    }
+
+    @Override
+    void appendValue(int row, int width, StringBuilder line) {
+        BigInteger bigValue = bigValues != null ? bigValues[row] : null;
+        if (bigValue != null) {
+            appendBigInteger(bigValue, width, line);
+        } else {
+            appendLong(values[row], width, line);
+        }
+    }
+
+    @Override
+    void appendFormattedValue(Object value, int width, StringBuilder line) {
+        if (isBig(value)) {
+            appendBigInteger((BigInteger) value, width, line);
+        } else {
+            appendLong(toLong(value), width, line);
+        }
+    }
+
+    private void appendBigInteger(BigInteger value, int width, StringBuilder line) {
+        String text = value.toString();
+        if (!autoFillZeros) {
+            appendJustified(line, text, text.length(), width);
+        } else if (value.signum() < 0) {
+            line.append('-');
+            appendZeros(line, width - text.length());
+            line.append(text, 1, text.length());
+        } else {
+            appendZeros(line, width - text.length());
+            line.append(text);
+        }
+    }
+
+    private void appendLong(long value, int width, StringBuilder line) {
+        int padding = width - stringSize(value);
+        if (autoFillZeros) {
+            //zeros go between the sign and the digits, as with the %0d format
+            if (value < 0) {
+                line.append('-');
+                appendZeros(line, padding);
+                if (value == Long.MIN_VALUE) {
+                    line.append("9223372036854775808");
+                } else {
+                    line.append(-value);
+                }
+            } else {
+                appendZeros(line, padding);
+                line.append(value);
+            }
+        } else if (isRightJustify()) {
+            appendSpaces(line, padding);
+            line.append(value);
+        } else {
+            line.append(value);
+            appendSpaces(line, padding);
+        }
     }
 }
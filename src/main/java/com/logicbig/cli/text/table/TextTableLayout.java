@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.text.table;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The columns and the width of a {@link TextTable} without any rows, see {@link TextTable#compileLayout()}. A layout
+ * is immutable and can be rendered any number of times, also concurrently, each time with different rows. Its
+ * columns only hold the format settings. The column widths of each rendering are computed from its rows into an
+ * array of its own, and the values are formatted straight from the rows without being stored.
+ *
+ * @author Joe Khan
+ */
+public final class TextTableLayout {
+    private final int terminalWidth;
+    private final boolean parallel;
+    private final List<TextTableColumn> columns;
+
+    TextTableLayout(int terminalWidth, boolean parallel, List<TextTableColumn> columns) {
+        this.terminalWidth = terminalWidth;
+        this.parallel = parallel;
+        List<TextTableColumn> emptyColumns = new ArrayList<>(columns.size());
+        for (TextTableColumn column : columns) {
+            emptyColumns.add(column.newEmptyColumn());
+        }
+        this.columns = Collections.unmodifiableList(emptyColumns);
+    }
+
+    /**
+     * Prints the rows as a table. Nothing is printed if there are no rows. The rows are iterated twice, first to
+     * compute the column widths, then to print them. A large random access list of rows is rendered in parallel if
+     * the table was set to, see {@link TextTable#renderInParallel(boolean)}.
+     *
+     * @param rows the rows, each with one value per column
+     * @param out  the output to print the table to, System.out is used if null
+     * @throws IllegalArgumentException if a row is null, has the wrong number of values or a value which is not
+     *                                  compatible with its column, nothing is printed then
+     */
+    public void render(Iterable<? extends List<?>> rows, Appendable out) {
+        Appendable output = out != null ? out : System.out;
+        List<? extends List<?>> rowList = rows instanceof List && rows instanceof RandomAccess ?
+                (List<? extends List<?>>) rows : null;
+        if (rowList != null && TextTable.isRenderedInParallel(parallel, rowList.size())) {
+            renderInParallel(rowList, output);
+        } else {
+            int[] widths = computeWidths(rows);
+            if (widths != null) {
+                renderRows(rows, widths, output);
+            }
+        }
+        if (out == null) {
+            System.out.flush();
+        }
+    }
+
+    /**
+     * Renders the rows into a String, see {@link #render(Iterable, Appendable)}.
+     *
+     * @param rows the rows, each with one value per column
+     * @return the table including the line breaks
+     */
+    public String render(Iterable<? extends List<?>> rows) {
+        StringBuilder sb = new StringBuilder();
+        render(rows, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @return the display width of each column, or null if there are no rows
+     */
+    private int[] computeWidths(Iterable<? extends List<?>> rows) {
+        int[] widths = null;
+        for (List<?> row : rows) {
+            if (widths == null) {
+                widths = new int[columns.size()];
+            }
+            validate(row);
+            for (int c = 0; c < widths.length; c++) {
+                widths[c] = Math.max(widths[c], columns.get(c).computeValueWidth(row.get(c)));
+            }
+        }
+        if (widths != null) {
+            TextTable.fitWrappedColumns(columns, widths, terminalWidth);
+        }
+        return widths;
+    }
+
+    private void validate(List<?> row) {
+        if (row == null) {
+            throw new IllegalArgumentException("Objects cannot be null " + row);
+        }
+        if (row.size() != columns.size()) {
+            throw new IllegalArgumentException("printRow expect equal number of arguments as column : columns=" +
+                    columns.size() + " objects=" + row.size());
+        }
+    }
+
+    /**
+     * Each row is rendered into a line buffer and written with a single append call, or straight into the output
+     * if it's a StringBuilder.
+     */
+    private void renderRows(Iterable<? extends List<?>> rows, int[] widths, Appendable output) {
+        TextTable.RowRenderer renderer = new TextTable.RowRenderer(columns, widths);
+        if (output instanceof StringBuilder) {
+            for (List<?> row : rows) {
+                renderer.renderRow(row, (StringBuilder) output);
+            }
+            return;
+        }
+        StringBuilder line = new StringBuilder(terminalWidth);
+        for (List<?> row : rows) {
+            line.setLength(0);
+            renderer.renderRow(row, line);
+            TextTable.append(output, line);
+        }
+    }
+
+    private void renderInParallel(List<? extends List<?>> rows, Appendable output) {
+        int[] widths = new int[columns.size()];
+        for (int c = 0; c < widths.length; c++) {
+            TextTableColumn column = columns.get(c);
+            int columnIndex = c;
+            widths[c] = TextTable.computeInParallel(rows.size(), (fromRow, toRow) -> {
+                int width = 0;
+                for (List<?> row : rows.subList(fromRow, toRow)) {
+                    //the rows are validated with the first column, before the other columns read them
+                    if (columnIndex == 0) {
+                        validate(row);
+                    }
+                    width = Math.max(width, column.computeValueWidth(row.get(columnIndex)));
+                }
+                return width;
+            });
+        }
+        TextTable.fitWrappedColumns(columns, widths, terminalWidth);
+        TextTable.printInParallel(rows.size(), (fromRow, toRow) -> {
+            TextTable.RowRenderer renderer = new TextTable.RowRenderer(columns, widths);
+            StringBuilder block = TextTable.newBlock(fromRow, toRow, terminalWidth);
+            for (List<?> row : rows.subList(fromRow, toRow)) {
+                renderer.renderRow(row, block);
+            }
+            return block;
+        }, output);
+    }
+
+    public int getTerminalWidth() {
+        return terminalWidth;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+}
@@ -16,12 +16,16 @@
 
 package com.logicbig.cli.text.table;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Joe Khan
  */
 public class TextTableStringColumn extends TextTableColumn {
 
     private final boolean wrapString;
+    private final List<String> values = new ArrayList<>();
 
     public TextTableStringColumn(boolean rightJustify, int leadingSpaces, boolean wrapString) {
         super(rightJustify, leadingSpaces);
@@ -34,7 +38,52 @@ public class TextTableStringColumn extends TextTableColumn {
     }
 
     @Override
-    protected String provideFormat() {
-        return "%" + (isRightJustify() ? "" : "-") + getDisplayWidth() + "s";
+    TextTableColumn newEmptyColumn() {
+        return new TextTableStringColumn(isRightJustify(), getLeadingSpaceCount(), wrapString);
+    }
+
+    @Override
+    void addValue(Object value) {
+        values.add(String.valueOf(value));
+    }
+
+    @Override
+    int getRowCount() {
+        return values.size();
+    }
+
+    @Override
+    void truncateValues(int rowCount) {
+        values.subList(rowCount, values.size()).clear();
+    }
+
+    @Override
+    int computeValuesWidth(int fromRow, int toRow) {
+        int width = 0;
+        for (String value : values.subList(fromRow, toRow)) {
+            width = Math.max(width, DisplayWidth.of(value));
+        }
+        return width;
+    }
+
+    String getValue(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    int computeValueWidth(Object value) {
+        return DisplayWidth.of(String.valueOf(value));
+    }
+
+    @Override
+    void appendValue(int row, int width, StringBuilder line) {
+        String value = values.get(row);
+        appendJustified(line, value, DisplayWidth.of(value), width);
+    }
+
+    @Override
+    void appendFormattedValue(Object value, int width, StringBuilder line) {
+        String text = String.valueOf(value);
+        appendJustified(line, text, DisplayWidth.of(text), width);
     }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.text.table;
+
+import java.util.Arrays;
+
+/**
+ * Wraps a text into lines of a maximum display width (see {@link DisplayWidth}) in a single pass. The words are
+ * separated by whitespace and joined by a single space, a word wider than a line is broken into pieces. The lines
+ * are kept as offsets into the text, so no intermediate strings are created, and the instance can be reused for the
+ * next text.
+ *
+ * @author Joe Khan
+ */
+final class WordWrap {
+    private CharSequence text;
+    //the words of all lines, a run of words separated by single spaces is kept as one segment
+    private int[] segmentStarts = new int[16];
+    private int[] segmentEnds = new int[16];
+    private int segmentCount;
+    private int[] lineFirstSegments = new int[8];
+    private int[] lineWidths = new int[8];
+    private int lineCount;
+
+    /**
+     * Wraps the text, replacing the lines of the previous text.
+     *
+     * @param maxWidth the maximum display width of a line, at least 1 is used
+     * @return the number of lines, 0 if the text is blank
+     */
+    int wrap(CharSequence text, int maxWidth) {
+        this.text = text;
+        segmentCount = 0;
+        lineCount = 0;
+        maxWidth = Math.max(1, maxWidth);
+        int length = text.length();
+        int i = 0;
+        while (true) {
+            while (i < length && isSpace(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return lineCount;
+            }
+            int wordStart = i;
+            int wordWidth = 0;
+            while (i < length && !isSpace(text.charAt(i))) {
+                int codePoint = Character.codePointAt(text, i);
+                wordWidth += DisplayWidth.of(codePoint);
+                i += Character.charCount(codePoint);
+            }
+            boolean lineEmpty = lineCount == 0 || segmentCount == lineFirstSegments[lineCount - 1];
+            if (!lineEmpty && lineWidths[lineCount - 1] + 1 + wordWidth <= maxWidth) {
+                addSegment(wordStart, i, 1 + wordWidth);
+            } else if (wordWidth <= maxWidth) {
+                if (!lineEmpty) {
+                    startLine();
+                }
+                addSegment(wordStart, i, wordWidth);
+            } else {
+                if (!lineEmpty) {
+                    startLine();
+                }
+                breakWord(wordStart, i, maxWidth);
+            }
+        }
+    }
+
+    private void breakWord(int start, int end, int maxWidth) {
+        int pieceStart = start;
+        int pieceWidth = 0;
+        for (int i = start; i < end; ) {
+            int codePoint = Character.codePointAt(text, i);
+            int width = DisplayWidth.of(codePoint);
+            //a zero width character stays with the character it belongs to
+            if (width > 0 && pieceWidth > 0 && pieceWidth + width > maxWidth) {
+                addSegment(pieceStart, i, pieceWidth);
+                startLine();
+                pieceStart = i;
+                pieceWidth = 0;
+            }
+            pieceWidth += width;
+            i += Character.charCount(codePoint);
+        }
+        //the last piece can be followed by the next words
+        addSegment(pieceStart, end, pieceWidth);
+    }
+
+    private void startLine() {
+        if (lineCount == lineFirstSegments.length) {
+            lineFirstSegments = Arrays.copyOf(lineFirstSegments, lineCount * 2);
+            lineWidths = Arrays.copyOf(lineWidths, lineCount * 2);
+        }
+        lineFirstSegments[lineCount] = segmentCount;
+        lineWidths[lineCount] = 0;
+        lineCount++;
+    }
+
+    private void addSegment(int start, int end, int width) {
+        if (lineCount == 0) {
+            startLine();
+        }
+        int line = lineCount - 1;
+        lineWidths[line] += width;
+        if (segmentCount > lineFirstSegments[line] && segmentEnds[segmentCount - 1] == start - 1 &&
+                text.charAt(start - 1) == ' ') {
+            segmentEnds[segmentCount - 1] = end;
+            return;
+        }
+        if (segmentCount == segmentStarts.length) {
+            segmentStarts = Arrays.copyOf(segmentStarts, segmentCount * 2);
+            segmentEnds = Arrays.copyOf(segmentEnds, segmentCount * 2);
+        }
+        segmentStarts[segmentCount] = start;
+        segmentEnds[segmentCount] = end;
+        segmentCount++;
+    }
+
+    /**
+     * @return the display width of the provided line
+     */
+    int getLineWidth(int line) {
+        return lineWidths[line];
+    }
+
+    /**
+     * Appends the words of the provided line separated by single spaces.
+     */
+    void appendLine(int line, StringBuilder output) {
+        int last = line + 1 < lineCount ? lineFirstSegments[line + 1] : segmentCount;
+        for (int s = lineFirstSegments[line]; s < last; s++) {
+            if (s > lineFirstSegments[line]) {
+                output.append(' ');
+            }
+            output.append(text, segmentStarts[s], segmentEnds[s]);
+        }
+    }
+
+    //the whitespace characters of the regular expression \s
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
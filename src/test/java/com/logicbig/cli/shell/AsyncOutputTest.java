@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.shell;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+/**
+ * Tests for the asynchronous output and its overflow policies
+ *
+ * @author Joe Khan.
+ */
+public class AsyncOutputTest {
+
+    @Test
+    public void block() throws InterruptedException {
+        BlockingTarget target = new BlockingTarget();
+        AsyncOutput output = target.start(OutputOverflowPolicy.BLOCK);
+        Thread producer = new Thread(() -> output.write("b\n"));
+        producer.start();
+        awaitWaiting(producer);
+        Assert.assertEquals(Arrays.asList("a\n"), target.chunks);
+
+        target.release();
+        producer.join();
+        output.close();
+        Assert.assertEquals(Arrays.asList("a\n", "b\n"), target.chunks);
+        Assert.assertEquals(0, output.getDroppedLines());
+    }
+
+    @Test
+    public void drop() throws InterruptedException {
+        BlockingTarget target = new BlockingTarget();
+        AsyncOutput output = target.start(OutputOverflowPolicy.DROP);
+        output.write("b\n");
+        output.write("c\nd\n");
+        Assert.assertEquals(3, output.getDroppedLines());
+
+        target.release();
+        output.close();
+        Assert.assertEquals(Arrays.asList("a\n"), target.chunks);
+    }
+
+    @Test
+    public void coalesce() throws InterruptedException {
+        BlockingTarget target = new BlockingTarget();
+        AsyncOutput output = target.start(OutputOverflowPolicy.COALESCE);
+        for (int i = 0; i < 10_000; i++) {
+            output.write(i + "\n");
+        }
+        target.release();
+        output.write("end\n");
+        output.close();
+
+        StringBuilder expected = new StringBuilder("a\n");
+        for (int i = 0; i < 10_000; i++) {
+            expected.append(i).append('\n');
+        }
+        expected.append("end\n");
+        Assert.assertEquals(expected.toString(), String.join("", target.chunks));
+        Assert.assertEquals("a\n", target.chunks.get(0));
+        Assert.assertTrue(target.chunks.toString(), target.chunks.get(1).startsWith("0\n1\n2\n"));
+        Assert.assertEquals(0, output.getDroppedLines());
+    }
+
+    @Test
+    public void printWhileFlushIsBlocked() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        StringWriter written = new StringWriter();
+        ShellOutput output = new ShellOutput();
+        output.setWriter(new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                written.write(chars, offset, length);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        output.setFlushThreshold(Integer.MAX_VALUE);
+        output.setAsync(1, OutputOverflowPolicy.BLOCK);
+        output.print("a");
+        output.flush();
+        //the writer thread is blocked with the first chunk, so the queue is full
+        awaitQueueFull(output);
+        Thread flushing = new Thread(() -> {
+            output.print("b");
+            output.flush();
+        });
+        flushing.start();
+        awaitWaiting(flushing);
+
+        Thread printing = new Thread(() -> output.print("c"));
+        printing.start();
+        printing.join(5000);
+        Assert.assertFalse("printing blocked by the flush", printing.isAlive());
+
+        release.countDown();
+        flushing.join();
+        output.awaitWritten();
+        Assert.assertEquals("abc", written.toString());
+        output.setAsync(0, OutputOverflowPolicy.BLOCK);
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.TIMED_WAITING && thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQueueFull(ShellOutput output) throws InterruptedException {
+        while (output.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Blocks the writer thread with the first chunk "a\n" until released, so the queue of capacity 1 stays full.
+     */
+    private static final class BlockingTarget implements Consumer<String> {
+        private final List<String> chunks = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private AsyncOutput start(OutputOverflowPolicy policy) throws InterruptedException {
+            AsyncOutput output = new AsyncOutput(1, policy, this);
+            output.write("a\n");
+            entered.await();
+            return output;
+        }
+
+        private void release() {
+            release.countDown();
+        }
+
+        @Override
+        public void accept(String chunk) {
+            chunks.add(chunk);
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
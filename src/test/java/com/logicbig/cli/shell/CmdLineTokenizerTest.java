@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the command line tokenizer
+ *
+ * @author Joe Khan.
+ */
+public class CmdLineTokenizerTest {
+
+    @Test
+    public void spacesAndQuotes() {
+        Assert.assertEquals(Arrays.asList("a", "\"b c\"", "d"), tokenize("a  \"b c\" d"));
+        Assert.assertEquals(Arrays.asList("--opt=\"v w\"", "-ab"), tokenize("--opt=\"v w\" -ab"));
+        Assert.assertEquals(Arrays.asList(), tokenize("   "));
+    }
+
+    @Test
+    public void escapedQuotes() {
+        //an escaped quote inside a quoted sequence doesn't close it
+        Assert.assertEquals(Arrays.asList("\"ab \\\" cd\"", "x"), tokenize("\"ab \\\" cd\" x"));
+
+        //an escaped quote outside of a quoted sequence is dropped from the value
+        CmdLineTokenizer tokenizer = new CmdLineTokenizer();
+        String line = "x\\\"y z";
+        Assert.assertEquals(2, tokenizer.tokenize(line, 0, line.length()));
+        Assert.assertTrue(tokenizer.hasEscapedQuote(0));
+        Assert.assertEquals("x\\y", tokenizer.getToken(0));
+        Assert.assertFalse(tokenizer.hasEscapedQuote(1));
+    }
+
+    @Test
+    public void unclosedQuote() {
+        try {
+            tokenize("a \"b");
+            Assert.fail("unclosed quote accepted");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Invalid command. Couldn't identify sequence at position 2", e.getMessage());
+        }
+    }
+
+    @Test
+    public void loneHyphen() {
+        Assert.assertEquals(Arrays.asList("-"), tokenize("-"));
+        Assert.assertEquals(Arrays.asList("a", "-", "b"), tokenize("a - b"));
+    }
+
+    @Test
+    public void offsets() {
+        CmdLineTokenizer tokenizer = new CmdLineTokenizer();
+        String line = "cmd arg1 \"arg 2\"";
+        Assert.assertEquals(2, tokenizer.tokenize(line, 4, line.length()));
+        Assert.assertEquals(4, tokenizer.getStart(0));
+        Assert.assertEquals(8, tokenizer.getEnd(0));
+        Assert.assertEquals("\"arg 2\"", tokenizer.getToken(1));
+    }
+
+    @Test
+    public void splitPipeline() {
+        Assert.assertEquals(Arrays.asList("cmd \"a|b\"", "upper", "x"),
+                CmdLineTokenizer.splitPipeline("cmd \"a|b\" | upper|x"));
+        Assert.assertEquals(Arrays.asList("cmd \"a \\\" |b\""), CmdLineTokenizer.splitPipeline("cmd \"a \\\" |b\""));
+        Assert.assertEquals(Arrays.asList("cmd a"), CmdLineTokenizer.splitPipeline("cmd a"));
+        Assert.assertEquals(Arrays.asList("a", ""), CmdLineTokenizer.splitPipeline("a |"));
+    }
+
+    private static List<String> tokenize(String line) {
+        CmdLineTokenizer tokenizer = new CmdLineTokenizer();
+        int count = tokenizer.tokenize(line, 0, line.length());
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tokens.add(tokenizer.getToken(i));
+        }
+        return tokens;
+    }
+}
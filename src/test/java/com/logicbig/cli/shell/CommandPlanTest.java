@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.shell;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests for the command plan slots and the parser binding values to them
+ *
+ * @author Joe Khan.
+ */
+public class CommandPlanTest {
+
+    @Test
+    public void slots() {
+        CommandObject command = new CommandObject("cmd", "cmd desc")
+                .addOption("optA", "opt A desc", false, String.class)
+                .addOption("optB", "opt B desc", true, String.class)
+                .addArgument("arg1", "arg1 desc")
+                .addArgument("arg2", "arg2 desc", true, String.class);
+        CommandPlan plan = CommandPlan.compile(command);
+        Assert.assertEquals(0, plan.getOptionSlot("optA", 0, 4));
+        Assert.assertEquals(1, plan.getOptionSlot("--optB=x", 2, 6));
+        Assert.assertEquals(-1, plan.getOptionSlot("optC", 0, 4));
+        Assert.assertEquals(2, plan.getArgumentsOffset());
+        //the mandatory arguments come first
+        Assert.assertEquals("arg2", plan.getArgumentName(0));
+        Assert.assertEquals("arg1", plan.getArgumentName(1));
+        Assert.assertEquals(1, plan.getMandatoryArgumentCount());
+        Assert.assertEquals(4, plan.getSlotCount());
+
+        CmdLineParser parser = parse(command, "cmd first --optB=b second");
+        Assert.assertArrayEquals(new String[]{null, "b", "first", "second"}, parser.getValues());
+        Assert.assertNull(parser.validate());
+        Map<String, String> inputMap = parser.createInputMap();
+        Assert.assertEquals("first", inputMap.get("arg2"));
+        Assert.assertEquals("second", inputMap.get("arg1"));
+        Assert.assertFalse(inputMap.containsKey("optA"));
+
+        Assert.assertEquals("Error: All mandatory options must be provided : [optB]",
+                parse(command, "cmd first").validate());
+        Assert.assertEquals("Error: All mandatory arguments must be provided : [arg2]",
+                parse(command, "cmd --optB=b").validate());
+    }
+
+    @Test
+    public void allowedValuesAndDefaults() {
+        CommandObject command = new CommandObject("cmd", "cmd desc")
+                .addOption("color", "color desc", false, String.class, "red", "green")
+                .addOption("name", "name desc", false, String.class);
+        CommandPlan plan = CommandPlan.compile(command);
+        Assert.assertEquals("red", plan.getDefaultValue(0));
+        Assert.assertNull(plan.getDefaultValue(1));
+        Assert.assertTrue(plan.isAllowedValue(0, "green"));
+        Assert.assertFalse(plan.isAllowedValue(0, "blue"));
+        Assert.assertTrue(plan.isAllowedValue(1, "blue"));
+
+        CmdLineParser parser = parse(command, "cmd");
+        Assert.assertNull(parser.validate());
+        Assert.assertEquals("red", parser.createInputMap().get("color"));
+
+        Assert.assertEquals("Error: Option value should be one of : [red, green]. Found : blue",
+                parse(command, "cmd --color=blue").validate());
+    }
+
+    @Test
+    public void moreOptionsThanBitsOfLong() {
+        CommandObject command = new CommandObject("cmd", "cmd desc");
+        for (int i = 0; i < 70; i++) {
+            command.addOption(optionName(i), "desc", i == 3 || i == 68, String.class);
+        }
+        CommandPlan plan = CommandPlan.compile(command);
+        Assert.assertEquals(2, plan.getOptionMaskLength());
+        Assert.assertEquals(69, plan.getOptionSlot(optionName(69), 0, 3));
+
+        CmdLineParser parser = parse(command, "cmd --oad=a --ocq=b --ocr=c");
+        Assert.assertNull(parser.validate());
+        Assert.assertEquals("b", parser.createInputMap().get("ocq"));
+        Assert.assertEquals("c", parser.createInputMap().get("ocr"));
+
+        Assert.assertEquals("Error: All mandatory options must be provided : [oad, ocq]",
+                parse(command, "cmd --oad=a --ocr=c").validate());
+        Assert.assertEquals("Error: All mandatory options must be provided : [oad, ocq]",
+                parse(command, "cmd --ocq=b").validate());
+    }
+
+    // option names can only have letters: oaa, oab ...
+    private static String optionName(int i) {
+        return "o" + (char) ('a' + i / 26) + (char) ('a' + i % 26);
+    }
+
+    private static CmdLineParser parse(CommandObject command, String line) {
+        CommandRegistry registry = new CommandRegistry();
+        registry.add(command);
+        CmdLineParser parser = new CmdLineParser(line, registry);
+        parser.parse();
+        Assert.assertTrue(parser.getErrors().toString(), parser.getErrors().isEmpty());
+        return parser;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the case folded command registry
+ *
+ * @author Joe Khan.
+ */
+public class CommandRegistryTest {
+
+    @Test
+    public void findIgnoresCase() {
+        CommandRegistry registry = new CommandRegistry();
+        CommandObject list = new CommandObject("List", "list desc");
+        registry.add(list);
+        Assert.assertSame(list, registry.find("list"));
+        Assert.assertSame(list, registry.find("LIST"));
+        Assert.assertSame(list, registry.find("lIsT"));
+        Assert.assertNull(registry.find("lis"));
+        Assert.assertNull(registry.find(null));
+        Assert.assertTrue(registry.contains("LiSt"));
+    }
+
+    @Test
+    public void duplicateIgnoringCase() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.add(new CommandObject("show", "show desc"));
+        try {
+            registry.add(new CommandObject("SHOW", "show desc"));
+            Assert.fail("duplicate accepted");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Command already exists please specify a different name: SHOW", e.getMessage());
+        }
+        Assert.assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void registrationOrder() {
+        CommandRegistry registry = new CommandRegistry();
+        for (String name : new String[]{"b", "A", "c"}) {
+            registry.add(new CommandObject(name, name));
+        }
+        List<String> names = new ArrayList<>();
+        for (CommandObject commandObject : registry.getCommands()) {
+            names.add(commandObject.getName());
+        }
+        Assert.assertEquals(Arrays.asList("b", "A", "c"), names);
+    }
+
+    @Test
+    public void versionChanges() {
+        CommandRegistry registry = new CommandRegistry();
+        CommandObject command = new CommandObject("cmd", "cmd desc");
+        command.addArgument("unregistered", "desc");
+        int version = registry.getVersion();
+        registry.add(command);
+        Assert.assertNotEquals(version, registry.getVersion());
+
+        version = registry.getVersion();
+        registry.find("cmd");
+        command.getPlan();
+        Assert.assertEquals(version, registry.getVersion());
+        command.addOption("opt", "opt desc", false, String.class);
+        Assert.assertNotEquals(version, registry.getVersion());
+
+        version = registry.getVersion();
+        command.addOptionFlag('f', "flag desc");
+        Assert.assertNotEquals(version, registry.getVersion());
+    }
+
+    @Test
+    public void foldCaseMatchesEqualsIgnoreCase() {
+        String plain = "list";
+        Assert.assertSame(plain, CommandRegistry.foldCase(plain));
+
+        //the dotted capital I, the kelvin sign and the final sigma fold like equalsIgnoreCase compares them
+        String[][] pairs = {{"Ab", "aB"}, {"\u0130x", "ix"}, {"\u212A", "k"}, {"\u03C2", "\u03A3"}, {"\u00DF", "ss"}};
+        for (String[] pair : pairs) {
+            Assert.assertEquals(pair[0] + " " + pair[1], pair[0].equalsIgnoreCase(pair[1]),
+                    CommandRegistry.foldCase(pair[0]).equals(CommandRegistry.foldCase(pair[1])));
+        }
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            String s = String.valueOf(c);
+            String upper = String.valueOf(Character.toUpperCase(c));
+            Assert.assertEquals(s.equalsIgnoreCase(upper),
+                    CommandRegistry.foldCase(s).equals(CommandRegistry.foldCase(upper)));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.logicbig.cli.shell;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Tests for the command metadata snapshot of runtime scanned handler classes
+ *
+ * @author Joe Khan.
+ */
+public class CommandSnapshotTest {
+    private static final String FIRST = "com.logicbig.cli.tests.HelpTest$FirstCommandHandler";
+    private static final String SECOND = "com.logicbig.cli.tests.HelpTest$SecondCommandHandler";
+    private static final String REMOVED = "com.logicbig.cli.tests.RemovedCommandHandler";
+
+    private final ClassLoader classLoader = CommandSnapshotTest.class.getClassLoader();
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("commands", ".snapshot");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void registrationsShareFile() {
+        QuickCLIShell shell = new QuickCLIShell("test", "test");
+        shell.registerCommandGroups(file, FIRST);
+        shell.registerCommandGroups(file, SECOND);
+        assertUpToDate(CommandSnapshot.read(file));
+
+        new QuickCLIShell("test", "test").registerCommandGroups(file, FIRST);
+        assertUpToDate(CommandSnapshot.read(file));
+    }
+
+    @Test
+    public void removesMissingClasses() throws IOException {
+        new QuickCLIShell("test", "test").registerCommandGroups(file, FIRST, SECOND);
+        CommandSnapshot snapshot = CommandSnapshot.read(file);
+        snapshot.put(REMOVED, 1, Collections.<CommandObject>emptyList());
+        snapshot.write(file);
+        Assert.assertTrue(CommandSnapshot.read(file).isUpToDate(REMOVED, 1));
+
+        new QuickCLIShell("test", "test").registerCommandGroups(file, FIRST);
+        snapshot = CommandSnapshot.read(file);
+        assertUpToDate(snapshot);
+        Assert.assertFalse(snapshot.isUpToDate(REMOVED, 1));
+    }
+
+    private void assertUpToDate(CommandSnapshot snapshot) {
+        Assert.assertTrue(snapshot.isUpToDate(FIRST, CommandSnapshot.stamp(FIRST, classLoader)));
+        Assert.assertTrue(snapshot.isUpToDate(SECOND, CommandSnapshot.stamp(SECOND, classLoader)));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.shell;
+
+import com.logicbig.cli.processor.CommandProcessor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the commands generated by {@link CommandProcessor}, compared to the runtime scanning of the same handler
+ *
+ * @author Joe Khan.
+ */
+public class GeneratedCommandsTest {
+
+    private static final String HANDLER_SOURCE = "package sample;\n" +
+            "import com.logicbig.cli.annotation.*;\n" +
+            "import java.util.stream.Stream;\n" +
+            "public class Handler {\n" +
+            "    @Command(name = \"greet\", desc = \"greet desc\")\n" +
+            "    public String greet(@Option(name = \"greeting\", desc = \"greeting desc\", " +
+            "valuesAllowed = {\"Hello\", \"Hi\"}) String greeting,\n" +
+            "                        @OptionFlag(name = 'u', desc = \"upper desc\") boolean upper,\n" +
+            "                        @Argument(name = \"name\", desc = \"name desc\", mandatory = true) String name) {\n" +
+            "        String s = greeting + \" \" + name;\n" +
+            "        return upper ? s.toUpperCase() : s;\n" +
+            "    }\n" +
+            "    @Command(name = \"sum\", desc = \"sum desc\")\n" +
+            "    public String sum(@Argument(name = \"a\", desc = \"a desc\", mandatory = true) int a,\n" +
+            "                      @Option(name = \"b\", desc = \"b desc\", mandatory = true) Long b) {\n" +
+            "        return Long.toString(a + b);\n" +
+            "    }\n" +
+            "    @Command(name = \"count\", desc = \"count desc\")\n" +
+            "    public String count(@Input Stream<String> lines) {\n" +
+            "        return Long.toString(lines.count());\n" +
+            "    }\n" +
+            "    public static class Nested {\n" +
+            "        @Command(name = \"nested\", desc = \"nested desc\")\n" +
+            "        public void nested() {\n" +
+            "        }\n" +
+            "    }\n" +
+            "}\n";
+
+    private Path directory;
+    private PrintStream console;
+    private ByteArrayOutputStream bytes;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("quick-cli");
+        bytes = new ByteArrayOutputStream();
+        console = System.out;
+        System.setOut(new PrintStream(bytes));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void sameCommandsAsRuntimeScanning() throws Exception {
+        ClassLoader generated = compile("generated", "-processor", CommandProcessor.class.getName());
+        ClassLoader scanned = compile("scanned", "-proc:none");
+        Assert.assertTrue(GeneratedCommands.class.isAssignableFrom(
+                Class.forName("sample.Handler_QuickCLICommands", false, generated)));
+        Assert.assertNotNull(Class.forName("sample.Handler_Nested_QuickCLICommands", false, generated));
+        try {
+            Class.forName("sample.Handler_QuickCLICommands", false, scanned);
+            Assert.fail("generated without the processor");
+        } catch (ClassNotFoundException e) {
+            //expected
+        }
+
+        QuickCLIShell generatedShell = newShell(generated);
+        QuickCLIShell scannedShell = newShell(scanned);
+        //the runtime scanning registers the commands in the unspecified order of Class#getDeclaredMethods
+        List<String> commands = describeCommands(scannedShell);
+        List<String> generatedCommands = describeCommands(generatedShell);
+        commands.sort(null);
+        generatedCommands.sort(null);
+        Assert.assertEquals(4, commands.size());
+        Assert.assertEquals(commands, generatedCommands);
+
+        for (String line : new String[]{"greet bob", "greet -u --greeting=Hi bob", "greet --greeting=Hey bob",
+                "greet", "sum 1 --b=2", "sum 1", "sum x --b=2", "nested", "sum 1 --b=2 | count"}) {
+            Assert.assertEquals(line, runCommandOutput(scannedShell, line), runCommandOutput(generatedShell, line));
+        }
+        Assert.assertEquals("HI BOB", runCommandOutput(generatedShell, "greet -u --greeting=Hi bob"));
+    }
+
+    private ClassLoader compile(String name, String... options) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.assertNotNull("no system java compiler", compiler);
+        Path sourceFile = directory.resolve(name + "-src/sample/Handler.java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, HANDLER_SOURCE.getBytes(StandardCharsets.UTF_8));
+        Path classes = Files.createDirectories(directory.resolve(name));
+
+        List<String> arguments = new ArrayList<>(Arrays.asList(options));
+        arguments.addAll(Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-d", classes.toString(), sourceFile.toString()));
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        Assert.assertEquals(errors.toString(), 0, result);
+        return new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader());
+    }
+
+    private static QuickCLIShell newShell(ClassLoader classLoader) throws ClassNotFoundException {
+        QuickCLIShell shell = new QuickCLIShell("Test Shell ", "Shell desc");
+        shell.scanCommands(Class.forName("sample.Handler", false, classLoader),
+                Class.forName("sample.Handler$Nested", false, classLoader));
+        return shell;
+    }
+
+    // everything a command definition consists of, apart from the handler instance and the invoker
+    private static List<String> describeCommands(QuickCLIShell shell) throws ReflectiveOperationException {
+        Field registryField = QuickCLIShell.class.getDeclaredField("commandRegistry");
+        registryField.setAccessible(true);
+        List<String> commands = new ArrayList<>();
+        for (CommandObject command : ((CommandRegistry) registryField.get(shell)).getCommands()) {
+            StringBuilder sb = new StringBuilder(command.getName()).append('|').append(command.getDescription());
+            for (OptionObject option : command.getOptionObjects()) {
+                sb.append("|option ").append(option).append(option.isMandatory()).append(option.getType())
+                        .append(option.getValidValues());
+            }
+            for (OptionFlagObject flag : command.getOptionFlagObjects()) {
+                sb.append("|flag ").append(flag.getFlgName()).append(flag.getDescription());
+            }
+            for (ArgumentObject argument : command.getArgumentObjects()) {
+                sb.append("|argument ").append(argument).append(argument.isMandatory()).append(argument.getType());
+            }
+            CommandMethodInfo info = command.getCommandMethodInfo();
+            sb.append('|').append(info.getMethodName()).append(info.getArgumentFieldTypeMap())
+                    .append(info.getInputParameterIndex()).append(info.getInputType());
+            commands.add(sb.toString());
+        }
+        return commands;
+    }
+
+    private String runCommandOutput(QuickCLIShell shell, String command) {
+        bytes.reset();
+        try {
+            Method processCommandMethod = QuickCLIShell.class.getDeclaredMethod("processCommand", String.class);
+            processCommandMethod.setAccessible(true);
+            processCommandMethod.invoke(shell, command);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toString().trim();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.shell;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.function.Function;
+
+/**
+ * Tests for parsing numbers without exceptions
+ *
+ * @author Joe Khan.
+ */
+public class NumberParserTest {
+
+    @Test
+    public void integralRanges() {
+        Assert.assertEquals((byte) 127, NumberParser.parseByte("127"));
+        Assert.assertEquals((byte) -128, NumberParser.parseByte("-128"));
+        Assert.assertSame(ValueConverter.INVALID, NumberParser.parseByte("128"));
+        Assert.assertSame(ValueConverter.INVALID, NumberParser.parseByte("-129"));
+
+        Assert.assertEquals((short) 32767, NumberParser.parseShort("32767"));
+        Assert.assertEquals((short) -32768, NumberParser.parseShort("-32768"));
+        Assert.assertSame(ValueConverter.INVALID, NumberParser.parseShort("32768"));
+
+        Assert.assertEquals(Integer.MAX_VALUE, NumberParser.parseInt("2147483647"));
+        Assert.assertEquals(Integer.MIN_VALUE, NumberParser.parseInt("-2147483648"));
+        Assert.assertSame(ValueConverter.INVALID, NumberParser.parseInt("2147483648"));
+
+        Assert.assertEquals(Long.MAX_VALUE, NumberParser.parseLong("9223372036854775807"));
+        Assert.assertEquals(Long.MIN_VALUE, NumberParser.parseLong("-9223372036854775808"));
+        Assert.assertSame(ValueConverter.INVALID, NumberParser.parseLong("9223372036854775808"));
+        Assert.assertSame(ValueConverter.INVALID, NumberParser.parseLong("-9223372036854775809"));
+    }
+
+    @Test
+    public void sameAsJdkParsers() {
+        String[] inputs = {null, "", "-", "+", "0", "+0", "-0", "007", "12a", "1 ", " 1", "1.5", "1e3", "1E-3",
+                ".5", "5.", ".", "1..2", "-.5e+2", "1e", "1e+", "1.5f", "1.5D", "1.5fd", "NaN", "-Infinity",
+                "Infinity ", "0x1p3", "0x1.8P-1f", "0x1", "0xp1", "\u0661\u0662", "1e2147483648",
+                "99999999999999999999"};
+        for (String s : inputs) {
+            assertSame(s, NumberParser::parseByte, Byte::parseByte);
+            assertSame(s, NumberParser::parseShort, Short::parseShort);
+            assertSame(s, NumberParser::parseInt, Integer::parseInt);
+            assertSame(s, NumberParser::parseLong, Long::parseLong);
+            assertSame(s, NumberParser::parseFloat, Float::parseFloat);
+            assertSame(s, NumberParser::parseDouble, Double::parseDouble);
+            assertSame(s, NumberParser::parseBigInteger, BigInteger::new);
+            assertSame(s, NumberParser::parseBigDecimal, BigDecimal::new);
+        }
+    }
+
+    private static void assertSame(String s, Function<String, Object> parser, Function<String, Object> jdkParser) {
+        Object expected;
+        try {
+            expected = jdkParser.apply(s);
+        } catch (NumberFormatException | NullPointerException e) {
+            expected = ValueConverter.INVALID;
+        }
+        Assert.assertEquals(String.valueOf(s), expected, parser.apply(s));
+    }
+}
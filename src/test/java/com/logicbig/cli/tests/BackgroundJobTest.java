@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.tests;
+
+import com.logicbig.cli.annotation.Argument;
+import com.logicbig.cli.annotation.Command;
+import com.logicbig.cli.shell.QuickCLIShell;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for commands run in the background with '&' and the jobs, wait and cancel commands
+ *
+ * @author Joe Khan.
+ */
+public class BackgroundJobTest {
+
+    private static final String EOL = System.getProperty("line.separator");
+    private static final String PADDING = "  ";
+    private StringWriter output;
+    private QuickCLIShell shell;
+
+    @Before
+    public void setUp() {
+        output = new StringWriter();
+        shell = new QuickCLIShell("Test Shell ", "Shell desc");
+        shell.setOutput(output);
+        shell.scanCommands(JobCommandHandler.class);
+    }
+
+    @Test
+    public void waitForJob() throws IOException {
+        Assert.assertEquals(0, runBatch("echo a &", "wait", "jobs", "wait 7", "cancel 7"));
+        Assert.assertEquals(lines("[1] echo a", "No background commands running", "No job found : 7",
+                "No job found : 7", "[1] Done echo a", "a"), output.toString());
+    }
+
+    @Test
+    public void cancelJob() throws IOException {
+        JobCommandHandler.started = new CountDownLatch(1);
+        Assert.assertEquals(0, runBatch("block &", "await", "cancel [1]", "wait 1", "jobs"));
+        Assert.assertEquals(lines("[1] block", "No job found : 1", "No background commands running",
+                "[1] Cancelled block"), output.toString());
+    }
+
+    @Test
+    public void listJobs() throws IOException {
+        JobCommandHandler.started = new CountDownLatch(1);
+        Assert.assertEquals(0, runBatch("block &", "echo b &", "await", "jobs", "cancel 1", "wait"));
+        String[] lines = output.toString().split(EOL);
+        Assert.assertEquals(PADDING + "[1] block", lines[0]);
+        Assert.assertEquals(PADDING + "[2] echo b", lines[1]);
+        //the echo job may or may not be listed
+        Assert.assertTrue(output.toString(), lines[2].trim().matches("\\[1] +\\d+s +block"));
+        Assert.assertTrue(output.toString(), output.toString().contains("[1] Cancelled block"));
+        Assert.assertTrue(output.toString(), output.toString().contains("[2] Done echo b" + EOL + PADDING + "b"));
+    }
+
+    @Test
+    public void applicationCommandsTakePrecedence() throws IOException {
+        shell.scanCommands(ClashingCommandHandler.class);
+        Assert.assertEquals(0, runBatch("jobs", "wait 3"));
+        Assert.assertEquals(lines("own jobs", "own wait 3"), output.toString());
+    }
+
+    private int runBatch(String... lines) throws IOException {
+        int exitCode = shell.runBatch(new StringReader(String.join("\n", lines)), true);
+        //removing the batch summary
+        String s = output.toString();
+        output.getBuffer().setLength(s.lastIndexOf(PADDING + "Batch completed: "));
+        return exitCode;
+    }
+
+    private static String lines(String... lines) {
+        return PADDING + String.join(EOL + PADDING, lines) + EOL;
+    }
+
+    public static class JobCommandHandler {
+        private static volatile CountDownLatch started;
+
+        @Command(name = "echo", desc = "echo desc")
+        public String echo(@Argument(name = "arg1", desc = "arg1 desc") String arg1) {
+            return arg1;
+        }
+
+        @Command(name = "block", desc = "blocks until interrupted")
+        public String block() throws InterruptedException {
+            started.countDown();
+            new CountDownLatch(1).await();
+            return "unblocked";
+        }
+
+        @Command(name = "await", desc = "waits for the block command to start")
+        public void awaitStarted() throws InterruptedException {
+            started.await();
+        }
+    }
+
+    public static class ClashingCommandHandler {
+
+        @Command(name = "jobs", desc = "jobs desc")
+        public String jobs() {
+            return "own jobs";
+        }
+
+        @Command(name = "wait", desc = "wait desc")
+        public String await(@Argument(name = "arg1", desc = "arg1 desc") String arg1) {
+            return "own wait " + arg1;
+        }
+    }
+}
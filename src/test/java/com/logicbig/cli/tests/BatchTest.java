@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.tests;
+
+import com.logicbig.cli.annotation.Argument;
+import com.logicbig.cli.annotation.Command;
+import com.logicbig.cli.shell.QuickCLIShell;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for running commands in batch mode
+ *
+ * @author Joe Khan.
+ */
+public class BatchTest {
+
+    private static final String EOL = System.getProperty("line.separator");
+    private static final String PADDING = "  ";
+    private StringWriter output;
+    private QuickCLIShell shell;
+
+    @Before
+    public void setUp() {
+        output = new StringWriter();
+        shell = new QuickCLIShell("Test Shell ", "Shell desc");
+        shell.setOutput(output);
+        shell.scanCommands(BatchCommandHandler.class);
+    }
+
+    @Test
+    public void exitCodes() throws IOException {
+        Assert.assertEquals(0, runBatch(true, "echo a", "", "# comment", "echo b"));
+        Assert.assertEquals(Arrays.asList("a", "b"), outputLines());
+        Assert.assertTrue(output.toString(), summary().startsWith("Batch completed: 2 commands, 0 failed, "));
+
+        Assert.assertEquals(1, runBatch(false, "echo a", "fail", "cmd", "echo b"));
+        Assert.assertEquals(Arrays.asList("a", "Error: java.lang.IllegalStateException: failed",
+                "Command failed at line 2 : fail", "Error: No command found : cmd", "Command failed at line 3 : cmd",
+                "b"), outputLines());
+        Assert.assertTrue(output.toString(), summary().startsWith("Batch completed: 4 commands, 2 failed, "));
+    }
+
+    @Test
+    public void stopOnError() throws IOException {
+        Assert.assertEquals(1, runBatch(true, "echo a", "echo", "echo b"));
+        Assert.assertEquals(Arrays.asList("a", "Error: All mandatory arguments must be provided : [arg1]",
+                "Command failed at line 2 : echo"), outputLines());
+        Assert.assertTrue(output.toString(), summary().startsWith("Batch completed: 2 commands, 1 failed, "));
+    }
+
+    @Test
+    public void utf8File() throws IOException {
+        File file = File.createTempFile("batch", ".txt");
+        try {
+            Files.write(file.toPath(), "echo \u00e9t\u00e9\necho \u4e2d\u6587".getBytes(StandardCharsets.UTF_8));
+            output.getBuffer().setLength(0);
+            Assert.assertEquals(0, shell.runBatch(file, true));
+            Assert.assertEquals(Arrays.asList("\u00e9t\u00e9", "\u4e2d\u6587"), outputLines());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void exitEndsBatch() throws IOException {
+        Assert.assertEquals(0, runBatch(false, "echo a", "exit", "echo b"));
+        Assert.assertEquals(Arrays.asList("a"), outputLines());
+        Assert.assertTrue(output.toString(), summary().startsWith("Batch completed: 2 commands, 0 failed, "));
+
+        Assert.assertEquals(1, runBatch(false, "fail", "exit", "echo b"));
+        Assert.assertTrue(output.toString(), summary().startsWith("Batch completed: 2 commands, 1 failed, "));
+    }
+
+    @Test
+    public void orderedParallel() throws IOException {
+        Assert.assertEquals(1, runBatch(3, true, "slow 60 a", "write b", "fail", "slow 30 c", "slow 0 d"));
+        Assert.assertEquals(Arrays.asList("a", "b", "b done", "Error: java.lang.IllegalStateException: failed",
+                "Command failed at line 3 : fail", "c", "d"), outputLines());
+        Assert.assertTrue(output.toString(), summary().startsWith("Batch completed: 5 commands, 1 failed, "));
+    }
+
+    @Test
+    public void taggedParallel() throws IOException {
+        Assert.assertEquals(0, runBatch(4, false, "slow 60 a", "write b", "slow 30 c"));
+        List<String> lines = new ArrayList<>(outputLines());
+        //printed as the commands finish, the lines of a command stay together
+        Assert.assertEquals(lines.indexOf("[2] b") + 1, lines.indexOf("[2] b done"));
+        lines.sort(null);
+        Assert.assertEquals(Arrays.asList("[1] a", "[2] b", "[2] b done", "[3] c"), lines);
+    }
+
+    @Test
+    public void writerOfRunningShell() throws IOException {
+        StringWriter otherOutput = new StringWriter();
+        QuickCLIShell otherShell = new QuickCLIShell("Other Shell ", "Shell desc");
+        otherShell.setOutput(otherOutput);
+        Assert.assertEquals(0, runBatch(false, "write a"));
+        Assert.assertEquals(Arrays.asList("a", "a done"), outputLines());
+        Assert.assertEquals("", otherOutput.toString());
+    }
+
+    private int runBatch(int parallelism, boolean ordered, String... lines) throws IOException {
+        output.getBuffer().setLength(0);
+        return shell.runBatch(new StringReader(String.join("\n", lines)), false, parallelism, ordered);
+    }
+
+    private int runBatch(boolean stopOnError, String... lines) throws IOException {
+        output.getBuffer().setLength(0);
+        return shell.runBatch(new StringReader(String.join("\n", lines)), stopOnError);
+    }
+
+    // the printed lines without the padding and the summary
+    private List<String> outputLines() {
+        List<String> lines = Arrays.asList(output.toString().split(EOL));
+        for (int i = 0; i < lines.size(); i++) {
+            Assert.assertTrue(lines.get(i), lines.get(i).startsWith(PADDING));
+            lines.set(i, lines.get(i).substring(PADDING.length()));
+        }
+        return lines.subList(0, lines.size() - 1);
+    }
+
+    private String summary() {
+        String s = output.toString();
+        return s.substring(s.lastIndexOf(EOL, s.length() - EOL.length() - 1) + EOL.length()).trim();
+    }
+
+    public static class BatchCommandHandler {
+
+        @Command(name = "echo", desc = "echo desc")
+        public String echo(@Argument(name = "arg1", desc = "arg1 desc", mandatory = true) String arg1) {
+            return arg1;
+        }
+
+        @Command(name = "slow", desc = "slow desc")
+        public String slow(@Argument(name = "millis", desc = "millis desc", mandatory = true) long millis,
+                           @Argument(name = "arg1", desc = "arg1 desc", mandatory = true) String arg1)
+                throws InterruptedException {
+            Thread.sleep(millis);
+            return arg1;
+        }
+
+        @Command(name = "write", desc = "write desc")
+        public String write(@Argument(name = "arg1", desc = "arg1 desc", mandatory = true) String arg1) {
+            QuickCLIShell.getWriter().printLine(arg1);
+            return arg1 + " done";
+        }
+
+        @Command(name = "fail", desc = "fail desc")
+        public String fail() {
+            throw new IllegalStateException("failed");
+        }
+    }
+}
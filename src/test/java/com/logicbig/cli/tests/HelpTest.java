@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.tests;
+
+import com.logicbig.cli.annotation.Command;
+import com.logicbig.cli.annotation.Option;
+import com.logicbig.cli.shell.QuickCLIShell;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+
+/**
+ * Tests for the help command
+ *
+ * @author Joe Khan.
+ */
+public class HelpTest {
+
+    private static final String EOL = System.getProperty("line.separator");
+    private StringWriter output;
+    private QuickCLIShell shell;
+
+    @Before
+    public void setUp() {
+        output = new StringWriter();
+        shell = new QuickCLIShell("Test Shell ", "Shell desc");
+        shell.setOutput(output);
+        shell.scanCommands(FirstCommandHandler.class);
+    }
+
+    @Test
+    public void helpOfLaterRegisteredCommands() throws IOException {
+        String help = runBatch("help");
+        Assert.assertTrue(help, help.contains("first desc"));
+        Assert.assertTrue(help, help.contains("optA desc"));
+        Assert.assertFalse(help, help.contains("second desc"));
+
+        shell.scanCommands(SecondCommandHandler.class);
+        help = runBatch("help");
+        Assert.assertTrue(help, help.contains("first desc"));
+        Assert.assertTrue(help, help.contains("second desc"));
+        Assert.assertTrue(help, help.contains("optB desc"));
+
+        help = runBatch("help second");
+        Assert.assertTrue(help, help.contains("optB desc"));
+        Assert.assertFalse(help, help.contains("first desc"));
+    }
+
+    @Test
+    public void helpOfTerminalWidth() throws IOException {
+        String help = runBatch("help first");
+        Assert.assertEquals(help, runBatch("help first"));
+        shell.setTerminalWidth(40);
+        Assert.assertNotEquals(help, runBatch("help first"));
+    }
+
+    @Test
+    public void compactErrors() throws Exception {
+        shell.setCompactErrors(true);
+        Assert.assertEquals("  Error: Options not recognized : [optX]" + EOL +
+                "  Please use 'help first' command to view details" + EOL, processCommand("first --optX=1"));
+        //the parser errors are printed as a table filling the terminal width
+        String out = processCommand("first --optA");
+        Assert.assertTrue(out, out.startsWith("  Error: Option must contained a value followed by =, value entered: " +
+                "--optA "));
+        Assert.assertTrue(out, out.endsWith(EOL + "  Please use 'help first' command to view details" + EOL));
+        Assert.assertEquals(2, out.split(EOL).length);
+        out = processCommand("third");
+        Assert.assertTrue(out, out.startsWith("  Error: No command found : third "));
+        Assert.assertTrue(out, out.endsWith(EOL + "  Please use 'help' command to view details" + EOL));
+        Assert.assertEquals(2, out.split(EOL).length);
+    }
+
+    @Test
+    public void errorsWithHelp() throws Exception {
+        String help = runBatch("help first");
+        String out = processCommand("first --optX=1");
+        Assert.assertEquals("  Error: Options not recognized : [optX]" + EOL + help, out);
+        //printed from the cached help
+        Assert.assertEquals(out, processCommand("first --optX=1"));
+
+        out = processCommand("first --optA");
+        Assert.assertTrue(out, out.startsWith("  Error: Option must contained a value followed by =, value entered: " +
+                "--optA "));
+        Assert.assertTrue(out, out.contains(EOL + "  Command help: " + EOL));
+        Assert.assertTrue(out, out.contains("optA desc"));
+        Assert.assertFalse(out, out.contains("Please use 'help first' command"));
+    }
+
+    private String processCommand(String line) throws Exception {
+        output.getBuffer().setLength(0);
+        Method processCommand = QuickCLIShell.class.getDeclaredMethod("processCommand", String.class);
+        processCommand.setAccessible(true);
+        processCommand.invoke(shell, line);
+        return output.toString();
+    }
+
+    private String runBatch(String... lines) throws IOException {
+        output.getBuffer().setLength(0);
+        Assert.assertEquals(0, shell.runBatch(new StringReader(String.join("\n", lines)), true));
+        //without the batch summary
+        String s = output.toString();
+        return s.substring(0, s.lastIndexOf("  Batch completed: "));
+    }
+
+    public static class FirstCommandHandler {
+
+        @Command(name = "first", desc = "first desc")
+        public String first(@Option(name = "optA", desc = "optA desc, long enough to be wrapped in narrow tables")
+                                    String optA) {
+            return optA;
+        }
+    }
+
+    public static class SecondCommandHandler {
+
+        @Command(name = "second", desc = "second desc")
+        public String second(@Option(name = "optB", desc = "optB desc") String optB) {
+            return optB;
+        }
+    }
+}
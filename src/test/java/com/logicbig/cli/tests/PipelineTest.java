@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.tests;
+
+import com.logicbig.cli.annotation.Argument;
+import com.logicbig.cli.annotation.Command;
+import com.logicbig.cli.annotation.Input;
+import com.logicbig.cli.shell.QuickCLIShell;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests for command pipelines
+ *
+ * @author Joe Khan.
+ */
+public class PipelineTest {
+
+    private static final String EOL = System.getProperty("line.separator");
+    private static final String PADDING = "  ";
+    private StringWriter output;
+    private Method processCommandMethod;
+    private QuickCLIShell shell;
+
+    @Before
+    public void setUp() throws NoSuchMethodException {
+        output = new StringWriter();
+        processCommandMethod = QuickCLIShell.class.getDeclaredMethod("processCommand", String.class);
+        processCommandMethod.setAccessible(true);
+        shell = new QuickCLIShell("Test Shell ", "Shell desc");
+        shell.setOutput(output);
+        shell.scanCommands(PipelineCommandHandler.class);
+    }
+
+    @Test
+    public void stages() {
+        Assert.assertEquals(lines("1", "2", "3"), runCommandOutput("count 3"));
+        Assert.assertEquals(lines("1", "2"), runCommandOutput("count 3 | head 2"));
+        Assert.assertEquals(lines("X 1", "X 2"), runCommandOutput("count 3 | prefix x | head 2 | upper"));
+        Assert.assertEquals(lines("A|B"), runCommandOutput("echo \"a|b\" | upper"));
+        Assert.assertEquals(lines(), runCommandOutput("echo a | head 0"));
+    }
+
+    @Test
+    public void earlyTermination() {
+        PipelineCommandHandler.produced.set(0);
+        Assert.assertEquals(lines("1", "2", "3"), runCommandOutput("infinite | head 3"));
+        //the producer stops once the pipe is closed, it can be ahead by the pipe capacity only
+        Assert.assertTrue(Long.toString(PipelineCommandHandler.produced.get()),
+                PipelineCommandHandler.produced.get() < 10_000);
+    }
+
+    @Test
+    public void nonSequenceResults() {
+        Assert.assertEquals(lines("ASYNC A", "ASYNC B"), runCommandOutput("async a | prefix async | upper"));
+        Assert.assertEquals(lines("X 1", "X 2"), runCommandOutput("lines | prefix x | upper"));
+    }
+
+    @Test
+    public void lineBreaks() {
+        //a trailing line break doesn't pass an empty line, CRLF line breaks pass no carriage return
+        Assert.assertEquals(lines("[a]", "[b]"), runCommandOutput("crlf | quote"));
+        Assert.assertEquals(lines("[a]", "[]", "[b]", "[c]"), runCommandOutput("elements | quote"));
+        Assert.assertEquals(lines("[1]", "[2]"), runCommandOutput("count 2 | quote"));
+    }
+
+    @Test
+    public void iterableInputIteratedOnce() {
+        try {
+            runCommandOutput("count 2 | twice");
+            Assert.fail("iterated the piped input twice");
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (!(cause instanceof IllegalStateException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            Assert.assertEquals("The piped input can only be iterated once", cause.getMessage());
+        }
+    }
+
+    private String runCommandOutput(String command) {
+        output.getBuffer().setLength(0);
+        try {
+            processCommandMethod.invoke(shell, command);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        return output.toString();
+    }
+
+    private static String lines(String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(PADDING).append(line).append(EOL);
+        }
+        return sb.toString();
+    }
+
+    public static class PipelineCommandHandler {
+        private static final AtomicLong produced = new AtomicLong();
+
+        @Command(name = "echo", desc = "echo desc")
+        public String echo(@Argument(name = "arg1", desc = "arg1 desc") String arg1) {
+            return arg1;
+        }
+
+        @Command(name = "count", desc = "count desc")
+        public Stream<String> count(@Argument(name = "to", desc = "to desc", mandatory = true) int to) {
+            return Stream.iterate(1, i -> i + 1).limit(to).map(Object::toString);
+        }
+
+        @Command(name = "infinite", desc = "infinite desc")
+        public Iterator<String> infinite() {
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public String next() {
+                    return Long.toString(produced.incrementAndGet());
+                }
+            };
+        }
+
+        @Command(name = "async", desc = "async desc")
+        public CompletableFuture<String> async(@Argument(name = "arg1", desc = "arg1 desc") String arg1) {
+            return CompletableFuture.supplyAsync(() -> arg1 + "\nb");
+        }
+
+        @Command(name = "lines", desc = "lines desc")
+        public Iterable<String> lines() {
+            List<String> lines = new ArrayList<>();
+            lines.add("1");
+            lines.add("2");
+            return lines;
+        }
+
+        @Command(name = "crlf", desc = "crlf desc")
+        public String crlf() {
+            return "a\r\nb\r\n";
+        }
+
+        @Command(name = "elements", desc = "elements desc")
+        public Stream<String> elements() {
+            return Stream.of("a\n", "\nb\n", "c");
+        }
+
+        @Command(name = "quote", desc = "quote desc")
+        public Stream<String> quote(@Input Iterable<String> lines) {
+            List<String> quoted = new ArrayList<>();
+            for (String line : lines) {
+                quoted.add("[" + line + "]");
+            }
+            return quoted.stream();
+        }
+
+        @Command(name = "twice", desc = "twice desc")
+        public String twice(@Input Iterable<String> lines) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 2; i++) {
+                for (String line : lines) {
+                    sb.append(line);
+                }
+            }
+            return sb.toString();
+        }
+
+        @Command(name = "head", desc = "head desc")
+        public Stream<String> head(@Argument(name = "count", desc = "count desc", mandatory = true) int count,
+                                   @Input Stream<String> lines) {
+            return lines.limit(count);
+        }
+
+        @Command(name = "prefix", desc = "prefix desc")
+        public Stream<String> prefix(@Argument(name = "prefix", desc = "prefix desc", mandatory = true) String prefix,
+                                     @Input Stream<String> lines) {
+            return lines.map(line -> prefix + " " + line);
+        }
+
+        @Command(name = "upper", desc = "upper desc")
+        public String upper(@Input Stream<String> lines) {
+            return lines.map(String::toUpperCase).collect(Collectors.joining("\n"));
+        }
+    }
+}
@@ -218,4 +218,11 @@ public class QuickCLIShellTest {
     public void command7(){
         Assert.assertEquals("5.5", runCommandOutput("command7 5.5"));
     }
+
+    @Test
+    public void tokens() {
+        assertStartsWith("command1 -", "Error: Invalid token -");
+        Assert.assertEquals("a|b c", runCommandOutput("command1 \"a|b c\""));
+        Assert.assertEquals("ab \\\" cd", runCommandOutput("command1 \"ab \\\" cd\""));
+    }
 }
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2015 LogicBig.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.logicbig.cli.text.table;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Tests for printing text tables
+ *
+ * @author Joe Khan.
+ */
+public class TextTableTest {
+
+    private static final String EOL = System.getProperty("line.separator");
+
+    @Test
+    public void streamRows() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = newTable(out).streamRows(2);
+        table.addRow("a", 1);
+        Assert.assertEquals("", out.toString());
+        table.addRow("bb", 22);
+        Assert.assertEquals(lines("a    1", "bb  22"), out.toString());
+
+        //the widths of the sample are kept, a wider String is wrapped, a wider number overflows its column
+        table.addRow("c", 3);
+        table.addRow("dd ee", 444);
+        Assert.assertEquals(lines("a    1", "bb  22", "c    3", "dd  444", "ee    "), out.toString());
+        table.printTable();
+        Assert.assertEquals(lines("a    1", "bb  22", "c    3", "dd  444", "ee    "), out.toString());
+    }
+
+    @Test
+    public void streamingNumberOverflow() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addIntegralColumn(true, 0, false).addStringColumn(false, 1, false)
+                .streamRows(1);
+        table.addRow(1, "a");
+        table.addRow(333, "b");
+        table.addRow(2, "c");
+        //only the row of the wider number is shifted
+        Assert.assertEquals(lines("1 a", "333 b", "2 c"), out.toString());
+    }
+
+    @Test
+    public void incompleteSample() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = newTable(out).streamRows(10);
+        table.addRow("a", 1);
+        table.addRow("bb", 22);
+        Assert.assertEquals("", out.toString());
+        table.printTable();
+        Assert.assertEquals(lines("a    1", "bb  22"), out.toString());
+        table.addRow("c", 3);
+        Assert.assertEquals(lines("a    1", "bb  22", "c    3"), out.toString());
+    }
+
+    @Test
+    public void sameAsKeptRows() {
+        StringBuilder streamed = new StringBuilder();
+        StringBuilder kept = new StringBuilder();
+        TextTable streamedTable = newTable(streamed).streamRows(100);
+        TextTable keptTable = newTable(kept);
+        for (int i = 0; i < 100; i++) {
+            streamedTable.addRow("row " + i, i * 7);
+            keptTable.addRow("row " + i, i * 7);
+        }
+        keptTable.printTable();
+        Assert.assertEquals(kept.toString(), streamed.toString());
+    }
+
+    @Test
+    public void streamRowsWithWidths() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = newTable(out).streamRowsWithWidths(3, 4);
+        table.addRow("a", 1);
+        Assert.assertEquals(lines("a       1"), out.toString());
+        table.addRow("bb cc", 22);
+        Assert.assertEquals(lines("a       1", "bb     22", "cc       "), out.toString());
+    }
+
+    @Test
+    public void streamingAfterRows() {
+        TextTable table = newTable(new StringBuilder());
+        table.addRow("a", 1);
+        try {
+            table.streamRows(1);
+            Assert.fail("streaming enabled after adding rows");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Streaming must be enabled before adding rows", e.getMessage());
+        }
+    }
+
+    @Test
+    public void parallelSameAsSerial() {
+        for (int rows : new int[]{10, 2047, 2048, 5000}) {
+            StringBuilder serial = new StringBuilder();
+            StringBuilder parallel = new StringBuilder();
+            TextTable serialTable = newMixedTable(serial);
+            TextTable parallelTable = newMixedTable(parallel).renderInParallel(true);
+            for (int i = 0; i < rows; i++) {
+                //every 100th value is wider than the others and wrapped
+                String text = i % 100 == 0 ? "a long value of row " + i + " which is wrapped" : "row " + i;
+                serialTable.addRow(text, (long) i * i - 1000, i / 7.0);
+                parallelTable.addRow(text, (long) i * i - 1000, i / 7.0);
+            }
+            serialTable.printTable();
+            parallelTable.printTable();
+            Assert.assertEquals(serial.toString(), parallel.toString());
+        }
+    }
+
+    @Test
+    public void layout() {
+        TextTableLayout layout = newMixedTable(new StringBuilder()).compileLayout();
+        for (int rows : new int[]{150, 1, 12}) {
+            StringBuilder printed = new StringBuilder();
+            TextTable table = newMixedTable(printed);
+            List<List<?>> rowList = new ArrayList<>();
+            for (int i = 0; i < rows; i++) {
+                List<?> row = Arrays.asList("row " + i, (long) i, i / 3.0);
+                rowList.add(row);
+                table.addRow(row);
+            }
+            table.printTable();
+            //the widths of each rendering depend on its own rows only
+            Assert.assertEquals(printed.toString(), layout.render(rowList));
+        }
+        Assert.assertEquals("", layout.render(Collections.<List<?>>emptyList()));
+    }
+
+    @Test
+    public void layoutOfLargeTable() {
+        TextTableLayout layout = newMixedTable(new StringBuilder()).renderInParallel(true).compileLayout();
+        StringBuilder printed = new StringBuilder();
+        TextTable table = newMixedTable(printed);
+        List<List<?>> rowList = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String text = i % 100 == 0 ? "a long value of row " + i + " which is wrapped" : "row " + i;
+            List<?> row = Arrays.asList(text, BigInteger.valueOf(i).pow(6), new BigDecimal(i).movePointLeft(2));
+            rowList.add(row);
+            table.addRow(row);
+        }
+        table.printTable();
+        Assert.assertEquals(printed.toString(), layout.render(rowList));
+        //not a random access list, so it's rendered on the calling thread, one line at a time
+        StringWriter writer = new StringWriter();
+        layout.render(new LinkedList<>(rowList), writer);
+        Assert.assertEquals(printed.toString(), writer.toString());
+    }
+
+    @Test
+    public void layoutWithInvalidRow() {
+        TextTableLayout layout = newMixedTable(new StringBuilder()).compileLayout();
+        StringBuilder out = new StringBuilder();
+        for (List<?> invalidRow : Arrays.asList(Arrays.asList("b", "x", 2.0), Arrays.asList("b", 2L), null)) {
+            try {
+                layout.render(Arrays.asList(Arrays.asList("a", 1L, 1.0), invalidRow), out);
+                Assert.fail("rendered " + invalidRow);
+            } catch (IllegalArgumentException e) {
+                //nothing is printed
+                Assert.assertEquals("", out.toString());
+            }
+        }
+    }
+
+    //the expected values are formatted as String.format("%.2f") and the other %f formats do
+    @Test
+    public void floatingPointTies() {
+        Assert.assertEquals(lines("0.13", "1.01", "2.68"), printFloatingPoint(true, false, 2, 0.125, 1.005, 2.675));
+        Assert.assertEquals(lines(" 1", " 2", " 3", "-1"), printFloatingPoint(true, false, 0, 0.5, 1.5, 2.5, -0.5));
+    }
+
+    @Test
+    public void floatingPointNegativeZero() {
+        Assert.assertEquals(lines("-0.00", "-0.00", " 0.00"), printFloatingPoint(true, false, 2, -0.0, -0.001, 0.0));
+        Assert.assertEquals(lines("-0.00", "-0.00", "00.00"), printFloatingPoint(true, true, 2, -0.0, -0.001, 0.0));
+    }
+
+    @Test
+    public void floatingPointNaNAndInfinity() {
+        //not filled with zeros, as with %09.2f
+        Assert.assertEquals(lines("      NaN", " Infinity", "-Infinity", "000001.50", "-00001.50"),
+                printFloatingPoint(true, true, 2, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                        1.5, -1.5));
+        Assert.assertEquals(lines("NaN      ", "-Infinity", "1.50     "),
+                printFloatingPoint(false, false, 2, Double.NaN, Double.NEGATIVE_INFINITY, 1.5));
+    }
+
+    @Test
+    public void floatingPointLargeValues() {
+        //rounded with BigDecimal when the scaled value exceeds 1e15
+        Assert.assertEquals(lines("   999999999999999.90", "  1000000000000000.00", "-45000000000000000.00",
+                "      123456789012.35"),
+                printFloatingPoint(true, false, 2, 9.999999999999999e14, 1e15, -4.5e16, 123456789012.345));
+    }
+
+    @Test
+    public void floatingPointBigNumbers() {
+        Assert.assertEquals(lines(" 2.68", "-1.01", " 0.13", "-0.00"), printFloatingPoint(true, false, 2,
+                new BigDecimal("2.675"), new BigDecimal("-1.005"), new BigDecimal("0.125"), new BigDecimal("-0.001")));
+        Assert.assertEquals(lines("123456789012345678901234567890.00", "  -123456789012345678901234567.90"),
+                printFloatingPoint(true, false, 2, new BigInteger("123456789012345678901234567890"),
+                        new BigDecimal("-123456789012345678901234567.895")));
+        Assert.assertEquals(lines("-00000000000000000000001.01", "123456789012345678901234.00"),
+                printFloatingPoint(true, true, 2, new BigDecimal("-1.005"), new BigInteger("123456789012345678901234")));
+    }
+
+    @Test
+    public void floatingPointJustification() {
+        Assert.assertEquals(lines("  1.5", "-22.3"), printFloatingPoint(true, false, 1, 1.5, -22.25));
+        Assert.assertEquals(lines("1.5  ", "-22.3"), printFloatingPoint(false, false, 1, 1.5, -22.25));
+        Assert.assertEquals(lines("001.5", "-22.3"), printFloatingPoint(true, true, 1, 1.5, -22.25));
+        //zero filled is right justified whatever the alignment, as %0 can't be combined with %-
+        Assert.assertEquals(lines("001.5", "-22.3"), printFloatingPoint(false, true, 1, 1.5, -22.25));
+
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addFloatingPointColumn(true, 2, false, 1)
+                .addFloatingPointColumn(false, 3, false, 1);
+        table.addRow(1.5, 1.5);
+        table.addRow(-22.25, -22.25);
+        table.printTable();
+        Assert.assertEquals(lines("    1.5   1.5  ", "  -22.3   -22.3"), out.toString());
+    }
+
+    @Test
+    public void primitiveRows() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addIntegralColumn(true, 0, false).addFloatingPointColumn(true, 1, false, 2)
+                .addStringColumn(false, 1, false);
+        table.addRow(new long[]{1, -2, 3});
+        table.addRow(new long[]{Long.MAX_VALUE, Long.MIN_VALUE, 0});
+        table.printTable();
+        //a floating point column keeps the long as a double, printed as %.2f prints it
+        Assert.assertEquals(lines("                  1                   -2.00 3",
+                "9223372036854775807 -9223372036854776000.00 0"), out.toString());
+
+        out = new StringBuilder();
+        table = new TextTable(80, out).addFloatingPointColumn(true, 0, false, 1).addStringColumn(true, 1, false);
+        table.addRow(new double[]{1.25, 0.5});
+        table.addRow(new double[]{-0.0, Double.NaN});
+        table.printTable();
+        Assert.assertEquals(lines(" 1.3 0.5", "-0.0 NaN"), out.toString());
+    }
+
+    @Test
+    public void incompatibleValueDiscardsRow() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addFloatingPointColumn(true, 0, false, 1)
+                .addIntegralColumn(true, 1, false).addFloatingPointColumn(true, 1, false, 1);
+        table.addRow(new long[]{1, 2, 3});
+        try {
+            table.addRow(new double[]{100.5, 2.5, 300.5});
+            Assert.fail("added a double to an integral column");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("integral"));
+        }
+        try {
+            table.addRow(100, new BigInteger("123456789012345678901234567890"), "300");
+            Assert.fail("added a String to a floating point column");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("floating point"));
+        }
+        table.addRow(new long[]{4, 5, 6});
+        table.printTable();
+        //none of the values of the discarded rows is printed or widens a column
+        Assert.assertEquals(lines("1.0 2 3.0", "4.0 5 6.0"), out.toString());
+    }
+
+    @Test
+    public void rowsGrowPastInitialCapacity() {
+        BigInteger big = BigInteger.ONE.shiftLeft(70);
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addIntegralColumn(true, 0, false).addFloatingPointColumn(true, 1, false, 1);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            if (i == 2 || i == 33) {
+                table.addRow(big.add(BigInteger.valueOf(i)), i * 0.5);
+                expected.append(String.format("%22d %5.1f", big.add(BigInteger.valueOf(i)), i * 0.5)).append(EOL);
+            } else if (i % 2 == 0) {
+                table.addRow(new long[]{i, -i});
+                expected.append(String.format("%22d %5.1f", i, (double) -i)).append(EOL);
+            } else {
+                table.addRow(i, i * 0.5);
+                expected.append(String.format("%22d %5.1f", i, i * 0.5)).append(EOL);
+            }
+        }
+        try {
+            table.addRow(new double[]{1, 2});
+            Assert.fail("added a double to an integral column");
+        } catch (IllegalArgumentException e) {
+            //the rolled back row past the initial capacity leaves the kept rows untouched
+        }
+        table.printTable();
+        Assert.assertEquals(expected.toString(), out.toString());
+    }
+
+    //the expected values are formatted as String.format("%0Nd"), "%Nd" and "%-Nd" do
+    @Test
+    public void integralZeroFilled() {
+        Assert.assertEquals(lines("00005", "-0012", "00123", "12345"), printIntegral(true, true, 5, -12, 123, 12345));
+        Assert.assertEquals(lines("00005", "-0012", "00123", "12345"), printIntegral(false, true, 5, -12, 123, 12345));
+    }
+
+    @Test
+    public void integralLongRange() {
+        Assert.assertEquals(lines("-9223372036854775808", " 9223372036854775807", "                   0"),
+                printIntegral(true, false, Long.MIN_VALUE, Long.MAX_VALUE, 0L));
+        Assert.assertEquals(lines("-9223372036854775808", "09223372036854775807", "00000000000000000000"),
+                printIntegral(true, true, Long.MIN_VALUE, Long.MAX_VALUE, 0L));
+        Assert.assertEquals(lines("-9223372036854775808", "9223372036854775807 ", "0                   "),
+                printIntegral(false, false, Long.MIN_VALUE, Long.MAX_VALUE, 0L));
+    }
+
+    @Test
+    public void integralBigInteger() {
+        BigInteger big = BigInteger.ONE.shiftLeft(70);
+        Assert.assertEquals(lines("-1180591620717411303424", " 1180591620717411303424", "                      1"),
+                printIntegral(true, false, big.negate(), big, BigInteger.ONE));
+        Assert.assertEquals(lines("-1180591620717411303424", "01180591620717411303424", "00000000000000000000001"),
+                printIntegral(true, true, big.negate(), big, BigInteger.ONE));
+        Assert.assertEquals(lines("-1180591620717411303424", "1180591620717411303424 ", "1                      "),
+                printIntegral(false, false, big.negate(), big, BigInteger.ONE));
+        Assert.assertEquals(lines("-009223372036854775808", "1180591620717411303424"),
+                printIntegral(true, true, Long.MIN_VALUE, big));
+    }
+
+    @Test
+    public void justificationWithLeadingSpaces() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addIntegralColumn(true, 2, false).addIntegralColumn(false, 3, false)
+                .addStringColumn(false, 1, false).addStringColumn(true, 2, false);
+        table.addRow(7, 7, "ab", "ab");
+        table.addRow(-123, -123, "abcd", "abcd");
+        table.printTable();
+        Assert.assertEquals(lines("     7   7    ab      ab", "  -123   -123 abcd  abcd"), out.toString());
+    }
+
+    @Test
+    public void displayWidth() {
+        Assert.assertEquals(1, DisplayWidth.of('a'));
+        Assert.assertEquals(2, DisplayWidth.of('\u4e2d'));
+        Assert.assertEquals(2, DisplayWidth.of(0x1f600));
+        Assert.assertEquals(0, DisplayWidth.of('\u0301'));
+        Assert.assertEquals(8, DisplayWidth.of("\u4e2d\u6587 \ud83d\ude00e\u0301"));
+    }
+
+    @Test
+    public void wrapMixedWidthText() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(9, out).addStringColumn(false, 0, true).addIntegralColumn(true, 1, false);
+        table.addRow("\u4e2d\u6587 \ud83d\ude00e\u0301 abc", 7);
+        //CJK and emoji take two columns, the combining accent none
+        table.addRow("\u4e00\u4e8c\u4e09\u56db\u4e94 a\u0301b\u0301c\u0301d\u0301e\u0301f\u0301g\u0301h\u0301i\u0301", 8);
+        table.printTable();
+        String expected = lines("\u4e2d\u6587 \ud83d\ude00e\u0301 7", "abc       ",
+                "\u4e00\u4e8c\u4e09\u56db 8", "\u4e94        ",
+                "a\u0301b\u0301c\u0301d\u0301e\u0301f\u0301g\u0301h\u0301  ", "i\u0301         ");
+        Assert.assertEquals(expected, out.toString());
+        for (String line : out.toString().split(EOL)) {
+            Assert.assertEquals(10, DisplayWidth.of(line));
+        }
+    }
+
+    @Test
+    public void wrapRightJustified() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(6, out).addStringColumn(true, 1, true);
+        table.addRow("\u4e2d\u6587 \ud83d\ude00 abc");
+        table.printTable();
+        Assert.assertEquals(lines("   \u4e2d\u6587", " \ud83d\ude00 abc"), out.toString());
+    }
+
+    @Test
+    public void wrapLongToken() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(10, out).addStringColumn(false, 0, true);
+        table.addRow("key: QUJDREVGR0hJSktMTU5PUFFSU1RVVldYWVo= ok");
+        table.printTable();
+        //the piece left of the token is followed by the next word
+        Assert.assertEquals(lines("key:      ", "QUJDREVGR0", "hJSktMTU5P", "UFFSU1RVVl", "dYWVo= ok "),
+                out.toString());
+    }
+
+    @Test
+    public void wrapCollapsesWhitespace() {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(12, out).addStringColumn(false, 0, true);
+        table.addRow("  alpha \t beta\n\ngamma\r\n   delta\f ");
+        table.printTable();
+        Assert.assertEquals(lines("alpha beta  ", "gamma delta "), out.toString());
+    }
+
+    private static String printIntegral(boolean rightAlign, boolean autoFillZeros, Object... values) {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addIntegralColumn(rightAlign, 0, autoFillZeros);
+        for (Object value : values) {
+            table.addRow(value);
+        }
+        table.printTable();
+        return out.toString();
+    }
+
+    private static String printFloatingPoint(boolean rightAlign, boolean autoFillZeros, int precision,
+                                             Object... values) {
+        StringBuilder out = new StringBuilder();
+        TextTable table = new TextTable(80, out).addFloatingPointColumn(rightAlign, 0, autoFillZeros, precision);
+        for (Object value : values) {
+            table.addRow(value);
+        }
+        table.printTable();
+        return out.toString();
+    }
+
+    private static TextTable newMixedTable(StringBuilder out) {
+        return new TextTable(60, out).addStringColumn(false, 0, true).addIntegralColumn(true, 2, false)
+                .addFloatingPointColumn(true, 2, false, 3);
+    }
+
+    private static TextTable newTable(StringBuilder out) {
+        return new TextTable(80, out).addStringColumn(false, 0, false).addIntegralColumn(true, 2, false);
+    }
+
+    private static String lines(String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append(EOL);
+        }
+        return sb.toString();
+    }
+}